@@ -0,0 +1,32 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawler-settings")
+public class CrawlerSettings {
+    private boolean incremental = true;
+    private boolean storePositions = true;
+    private String checkpointPath = "crawl";
+    private Duration checkpointInterval = Duration.ofSeconds(5);
+    private boolean resumeOnStartup = true;
+    private int siteThreads = Runtime.getRuntime().availableProcessors();
+    private int writeBatchSize = 200;
+    private Duration writeFlushInterval = Duration.ofMillis(500);
+    private int writeQueueSize = 1_000;
+    private int maxPages = 100_000;
+    private int maxDepth = 20;
+    private int maxPagesPerDepth = 20_000;
+    private double requestRate = 4;
+    private int requestBurst = 1;
+    private int fetchThreads = 4;
+    private Duration connectTimeout = Duration.ofSeconds(10);
+    private Duration fetchTimeout = Duration.ofSeconds(30);
+}
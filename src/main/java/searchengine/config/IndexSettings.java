@@ -0,0 +1,23 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "index-settings")
+public class IndexSettings {
+    private String path = "index";
+    private int flushPages = 10_000;
+    private Duration refreshInterval = Duration.ofSeconds(1);
+    private int mergeFactor = 10;
+    private int floorSegmentPages = 1_000;
+    private int maxSegmentPages = 500_000;
+    private int mergeDeletesPercent = 30;
+    private int maxMergeThreads = 2;
+}
@@ -0,0 +1,18 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "morphology-settings")
+public class MorphologySettings {
+    private int wordFormCacheSize = 200_000;
+    private List<String> russianStopParts = List.of("МЕЖД", "ПРЕДЛ", "СОЮЗ");
+    private List<String> englishStopParts = List.of("ARTICLE", "PREP", "CONJ", "PART", "PN");
+}
@@ -0,0 +1,27 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchSettings {
+    private String scorer = "bm25";
+    private float bm25K1 = 1.2f;
+    private float bm25B = 0.75f;
+    private int totalHitsThreshold = 1_000;
+    private int searchThreads = Runtime.getRuntime().availableProcessors();
+    private int snippetThreads = Runtime.getRuntime().availableProcessors();
+    private Duration timeout = Duration.ofSeconds(2);
+    private int prefetchResults = 100;
+    private int phraseCandidates = 1_000;
+    private int stopLemmaPercent = 5;
+    private Duration resultCacheTtl = Duration.ofSeconds(60);
+    private int resultCacheSize = 200;
+}
@@ -8,4 +8,8 @@ import lombok.Setter;
 public class Site {
     private String url;
     private String name;
+    /**
+     * Запросов в секунду к сайту; если не задано, используется crawler-settings.request-rate.
+     */
+    private Double requestRate;
 }
@@ -3,6 +3,8 @@ package searchengine.controllers;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import searchengine.dto.indexing.IndexingResponse;
+import searchengine.dto.indexing.IndexingStatusResponse;
+import searchengine.dto.searching.SearchCacheStatistics;
 import searchengine.dto.searching.SearchResponse;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.services.ParsingService;
@@ -38,8 +40,18 @@ public class ApiController {
     }
 
     @GetMapping("/stopIndexing")
-    public ResponseEntity<IndexingResponse> stopIndexing() {
-        return ResponseEntity.ok(parsingService.stopIndexing());
+    public ResponseEntity<IndexingResponse> stopIndexing(@RequestParam(required = false) final String site) {
+        return ResponseEntity.ok(parsingService.stopIndexing(site));
+    }
+
+    @GetMapping("/resumeIndexing")
+    public ResponseEntity<IndexingResponse> resumeIndexing(@RequestParam final String site) {
+        return ResponseEntity.ok(parsingService.resumeIndexing(site));
+    }
+
+    @GetMapping("/indexingStatus")
+    public ResponseEntity<IndexingStatusResponse> indexingStatus(@RequestParam final long jobId) {
+        return ResponseEntity.ok(parsingService.getIndexingStatus(jobId));
     }
 
     @PostMapping("/indexPage")
@@ -51,10 +63,16 @@ public class ApiController {
     public ResponseEntity<SearchResponse> search(
             @RequestParam final String query,
             @RequestParam(required = false) final String site,
-            @RequestParam final Integer offset,
-            @RequestParam final Integer limit) {
+            @RequestParam(defaultValue = "0") final Integer offset,
+            @RequestParam(defaultValue = "20") final Integer limit,
+            @RequestParam(required = false) final String cursor) {
+
+        return ResponseEntity.ok(searchingService.getSearchResults(query, site, offset, limit, cursor));
+    }
 
-        return ResponseEntity.ok(searchingService.getSearchResults(query, site, offset, limit));
+    @GetMapping("/searchCacheStatistics")
+    public ResponseEntity<SearchCacheStatistics> searchCacheStatistics() {
+        return ResponseEntity.ok(searchingService.getCacheStatistics());
     }
 
 }
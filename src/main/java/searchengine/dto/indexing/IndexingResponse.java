@@ -6,11 +6,17 @@ import lombok.Data;
 public class IndexingResponse {
     private boolean result;
     private String error;
+    private Long jobId;
 
     public IndexingResponse(boolean result) {
         this.result = result;
     }
 
+    public IndexingResponse(boolean result, Long jobId) {
+        this.result = result;
+        this.jobId = jobId;
+    }
+
     public IndexingResponse(boolean result, String error) {
         this.result = result;
         this.error = error;
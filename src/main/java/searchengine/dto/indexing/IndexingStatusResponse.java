@@ -0,0 +1,14 @@
+package searchengine.dto.indexing;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class IndexingStatusResponse {
+    private boolean result;
+    private String error;
+    private long jobId;
+    private boolean finished;
+    private List<SiteIndexingStatus> sites;
+}
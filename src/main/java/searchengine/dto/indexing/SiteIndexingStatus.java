@@ -0,0 +1,12 @@
+package searchengine.dto.indexing;
+
+import lombok.Data;
+
+@Data
+public class SiteIndexingStatus {
+    private String url;
+    private String name;
+    private String status;
+    private String error;
+    private int pages;
+}
@@ -0,0 +1,23 @@
+package searchengine.dto.searching;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class SearchCacheStatistics {
+    private boolean result;
+    private int size;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    private long evictions;
+    /**
+     * Записи, удалённые из-за смены поколения индекса.
+     */
+    private long invalidations;
+    /**
+     * Записи, удалённые по истечении search-settings.result-cache-ttl.
+     */
+    private long expirations;
+}
@@ -13,6 +13,18 @@ public class SearchResponse {
     private String error;
     private Integer count;
     private List<SearchData> data;
+    private String cursor;
+    /**
+     * Не все сайты успели ответить за отведённое время.
+     */
+    private boolean partial;
+
+    public SearchResponse(boolean result, String error, Integer count, List<SearchData> data) {
+        this.result = result;
+        this.error = error;
+        this.count = count;
+        this.data = data;
+    }
 
     public SearchResponse(boolean result, String error) {
         this.result = result;
@@ -5,7 +5,10 @@ import lombok.Data;
 
 @Entity
 @Data
-@Table(name = "lemma", schema = "search_engine")
+@Table(name = "lemma", schema = "search_engine",
+        uniqueConstraints =
+        @UniqueConstraint(name = "site_lemma_index",
+                columnNames = {"site_id", "lemma"}))
 public class LemmaEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -16,9 +19,16 @@ public class LemmaEntity {
     @JoinColumn (referencedColumnName = "site_id", name = "site_id")
     private SiteEntity siteID;
 
-    @Column(name = "lemma", nullable = false, columnDefinition = "varchar(255)")
+    /**
+     * Двоичное сравнение, чтобы уникальный ключ site_lemma_index не сливал разные леммы
+     * (например, «ёлка» и «елка»), равные при сравнении по умолчанию.
+     */
+    @Column(name = "lemma", nullable = false, columnDefinition = "varchar(255) collate utf8mb4_bin")
     private String lemma;
 
+    /**
+     * Число страниц сайта, содержащих лемму.
+     */
     @Column(name = "frequency", nullable = false)
     private int frequency;
 }
@@ -35,4 +35,28 @@ public class PageEntity {
 
     @Column(name = "page_content", nullable = false, columnDefinition = "mediumtext")
     private String pageContent;
+
+    @Column(name = "page_title", columnDefinition = "varchar(1024)")
+    private String title;
+
+    /**
+     * Видимый текст страницы; поиск строит по нему сниппеты, не разбирая HTML.
+     */
+    @Column(name = "page_text", columnDefinition = "mediumtext")
+    private String text;
+
+    @Column(name = "doc_length")
+    private Integer docLength;
+
+    @Column(name = "etag")
+    private String etag;
+
+    @Column(name = "last_modified", columnDefinition = "varchar(64)")
+    private String lastModified;
+
+    /**
+     * SHA-256 тела ответа, по которому повторный обход узнаёт неизменившиеся страницы.
+     */
+    @Column(name = "content_hash", columnDefinition = "char(64)")
+    private String contentHash;
 }
@@ -24,4 +24,11 @@ public class SearchIndex {
 
     @Column(name = "search_rank", nullable = false)
     private float searchRank;
+
+    /**
+     * Позиции вхождений леммы в тексте страницы в формате TokenPositions; null у страниц,
+     * проиндексированных без позиций.
+     */
+    @Column(name = "positions", columnDefinition = "mediumblob")
+    private byte[] positions;
 }
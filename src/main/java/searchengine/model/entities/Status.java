@@ -3,5 +3,9 @@ package searchengine.model.entities;
 public enum Status {
     INDEXING,
     INDEXED,
-    FAILED
+    FAILED,
+    /**
+     * Обход прерван, но сохранена контрольная точка, с которой его можно продолжить.
+     */
+    RESUMABLE
 }
@@ -1,12 +1,42 @@
 package searchengine.model.repositories;
 
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import searchengine.model.entities.PageEntity;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface PageRepository extends JpaRepository<PageEntity, Integer> {
     ArrayList<PageEntity> findPageEntitiesBySiteID_Url(String url);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("select p.pageID as pageId, p.siteID.siteID as siteId, " +
+            "p.pagePath as pagePath, p.title as pageTitle, " +
+            "case when p.title is null then p.pageContent else null end as pageContent " +
+            "from PageEntity p where p.pageID > :pageId order by p.pageID")
+    Stream<PageView> streamPagesAfter(@Param("pageId") int pageId);
+
+    @Query("select p.pageID as pageId, p.pagePath as pagePath, p.etag as etag, " +
+            "p.lastModified as lastModified, p.contentHash as contentHash " +
+            "from PageEntity p where p.siteID.siteID = :siteId")
+    List<PageValidatorsView> findValidatorsBySiteId(@Param("siteId") int siteId);
+
+    /**
+     * Номер сохранённой страницы сайта по адресу - выборка по индексу page_path, а не перебор всех страниц.
+     */
+    @Query("select p.pageID from PageEntity p where p.siteID.siteID = :siteId and p.pagePath = :pagePath")
+    Optional<Integer> findPageIdBySiteIdAndPath(@Param("siteId") int siteId, @Param("pagePath") String pagePath);
+
+    @Query("select p.pageContent from PageEntity p where p.pageID = :pageId")
+    String findContentByPageId(@Param("pageId") int pageId);
 }
@@ -0,0 +1,9 @@
+package searchengine.model.repositories;
+
+public interface PageValidatorsView {
+    int getPageId();
+    String getPagePath();
+    String getEtag();
+    String getLastModified();
+    String getContentHash();
+}
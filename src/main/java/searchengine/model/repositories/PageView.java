@@ -0,0 +1,12 @@
+package searchengine.model.repositories;
+
+public interface PageView {
+    int getPageId();
+    int getSiteId();
+    String getPagePath();
+    String getPageTitle();
+    /**
+     * HTML страницы; заполняется только для страниц без сохранённого заголовка.
+     */
+    String getPageContent();
+}
@@ -0,0 +1,7 @@
+package searchengine.model.repositories;
+
+public interface PositionsView {
+    int getPageId();
+    String getLemma();
+    byte[] getPositions();
+}
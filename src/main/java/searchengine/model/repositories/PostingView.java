@@ -0,0 +1,8 @@
+package searchengine.model.repositories;
+
+public interface PostingView {
+    int getSiteId();
+    int getPageId();
+    String getLemma();
+    float getSearchRank();
+}
@@ -1,6 +1,10 @@
 package searchengine.model.repositories;
 
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import searchengine.model.entities.LemmaEntity;
 import searchengine.model.entities.PageEntity;
@@ -8,6 +12,11 @@ import searchengine.model.entities.SearchIndex;
 import searchengine.model.entities.SiteEntity;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface SearchIndexRepository extends JpaRepository<SearchIndex, Integer> {
@@ -15,4 +24,16 @@ public interface SearchIndexRepository extends JpaRepository<SearchIndex, Intege
     ArrayList<SearchIndex> findSearchIndicesByLemmaID_LemmaAndPageID_SiteID (String lemma, SiteEntity site);
     ArrayList<SearchIndex> findSearchIndicesByPageIDAndLemmaID_Lemma (PageEntity page, String lemma);
     boolean existsByLemmaIDAndPageIDAndPageID_SiteID (LemmaEntity lemma, PageEntity page, SiteEntity site);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("select s.pageID.siteID.siteID as siteId, s.pageID.pageID as pageId, " +
+            "s.lemmaID.lemma as lemma, s.searchRank as searchRank " +
+            "from SearchIndex s where s.pageID.pageID > :pageId order by s.pageID.pageID")
+    Stream<PostingView> streamPostingsAfter(@Param("pageId") int pageId);
+
+    @Query("select s.pageID.pageID as pageId, s.lemmaID.lemma as lemma, s.positions as positions " +
+            "from SearchIndex s where s.pageID.pageID in :pageIds and s.lemmaID.lemma in :lemmas " +
+            "and s.positions is not null")
+    List<PositionsView> findPositions(@Param("pageIds") Collection<Integer> pageIds,
+                                      @Param("lemmas") Collection<String> lemmas);
 }
@@ -1,9 +1,12 @@
 package searchengine.services;
 
 import searchengine.dto.indexing.IndexingResponse;
+import searchengine.dto.indexing.IndexingStatusResponse;
 
 public interface ParsingService {
     IndexingResponse startIndexing();
-    IndexingResponse stopIndexing();
+    IndexingResponse stopIndexing(String site);
+    IndexingResponse resumeIndexing(String site);
+    IndexingStatusResponse getIndexingStatus(long jobId);
     IndexingResponse indexPage(String url);
 }
@@ -1,8 +1,11 @@
 package searchengine.services;
 
+import searchengine.dto.searching.SearchCacheStatistics;
 import searchengine.dto.searching.SearchResponse;
 
 public interface SearchingService {
-    SearchResponse getSearchResults(String query, String site, Integer offset, Integer limit);
+    SearchResponse getSearchResults(String query, String site, Integer offset, Integer limit, String cursor);
+
+    SearchCacheStatistics getCacheStatistics();
 
 }
@@ -0,0 +1,38 @@
+package searchengine.services.index;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+/**
+ * Okapi BM25: ранг леммы на странице (search_rank) используется как частота термина,
+ * длина страницы нормируется на среднюю длину страниц сайта.
+ */
+@Component("bm25")
+public class Bm25Scorer implements RelevanceScorer {
+    private final float k1;
+    private final float b;
+
+    public Bm25Scorer(SearchSettings searchSettings) {
+        this.k1 = searchSettings.getBm25K1();
+        this.b = searchSettings.getBm25B();
+    }
+
+    @Override
+    public float weight(int documentFrequency, int documentCount) {
+        return (float) Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    @Override
+    public float score(float weight, float rank, int length, float averageLength) {
+        return termScore(weight, rank, 1 - b + b * length / averageLength);
+    }
+
+    @Override
+    public float maxScore(float weight, float maxRank) {
+        return termScore(weight, maxRank, 1 - b);
+    }
+
+    private float termScore(float weight, float rank, float norm) {
+        return weight * rank * (k1 + 1) / (rank + k1 * norm);
+    }
+}
@@ -0,0 +1,263 @@
+package searchengine.services.index;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Неизменяемый сжатый список вхождений.
+ * Формат: [count][blockCount][максимальный ранг списка]
+ * [blockCount x (последняя страница блока, смещение начала блока, максимальный ранг блока)]
+ * [count x ранг float][разности идентификаторов страниц в variable-byte кодировке].
+ * Блоки содержат по {@link #SKIP_INTERVAL} записей; их таблица служит и указателями пропуска,
+ * и верхними границами рангов для досрочного отсечения при отборе лучших страниц.
+ */
+public final class CompressedPostings {
+    public static final int SKIP_INTERVAL = 32;
+    private static final int SKIP_SHIFT = 5;
+    private static final int HEADER_SIZE = 12;
+    private static final int BLOCK_ENTRY_SIZE = 12;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int blockCount;
+    private final float maxRank;
+    private final int blocksStart;
+    private final int ranksStart;
+    private final int docsStart;
+
+    private CompressedPostings(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.count = buffer.getInt(offset);
+        this.blockCount = buffer.getInt(offset + 4);
+        this.maxRank = buffer.getFloat(offset + 8);
+        this.blocksStart = offset + HEADER_SIZE;
+        this.ranksStart = blocksStart + blockCount * BLOCK_ENTRY_SIZE;
+        this.docsStart = ranksStart + count * 4;
+    }
+
+    public static CompressedPostings read(ByteBuffer buffer, int offset) {
+        return new CompressedPostings(buffer, offset);
+    }
+
+    public static CompressedPostings encode(PostingList list) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(list));
+        write(list, buffer);
+        return new CompressedPostings(buffer, 0);
+    }
+
+    public static int encodedSize(PostingList list) {
+        int size = list.size();
+        int docBytes = 0;
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            docBytes += varIntSize(list.pageAt(i) - previous);
+            previous = list.pageAt(i);
+        }
+        return HEADER_SIZE + blockCount(size) * BLOCK_ENTRY_SIZE + size * 4 + docBytes;
+    }
+
+    /**
+     * Записывает список в буфер начиная с его текущей позиции.
+     */
+    public static void write(PostingList list, ByteBuffer out) {
+        int size = list.size();
+        int blockCount = blockCount(size);
+        int headerStart = out.position();
+        out.putInt(size);
+        out.putInt(blockCount);
+        out.putFloat(0);
+        int blocksStart = out.position();
+        out.position(blocksStart + blockCount * BLOCK_ENTRY_SIZE);
+        for (int i = 0; i < size; i++) {
+            out.putFloat(list.rankAt(i));
+        }
+        int docsStart = out.position();
+        int previous = 0;
+        float listMax = 0;
+        float blockMax = 0;
+        for (int i = 0; i < size; i++) {
+            int entry = blocksStart + (i >> SKIP_SHIFT) * BLOCK_ENTRY_SIZE;
+            if ((i & (SKIP_INTERVAL - 1)) == 0) {
+                out.putInt(entry + 4, out.position() - docsStart);
+                blockMax = 0;
+            }
+            int page = list.pageAt(i);
+            writeVarInt(out, page - previous);
+            previous = page;
+            blockMax = Math.max(blockMax, list.rankAt(i));
+            listMax = Math.max(listMax, blockMax);
+            if ((i & (SKIP_INTERVAL - 1)) == SKIP_INTERVAL - 1 || i == size - 1) {
+                out.putInt(entry, page);
+                out.putFloat(entry + 8, blockMax);
+            }
+        }
+        out.putFloat(headerStart + 8, listMax);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public PostingIterator iterator() {
+        return new Iterator();
+    }
+
+    /**
+     * Распаковывает список целиком (используется при слиянии).
+     */
+    public PostingList toPostingList() {
+        PostingList list = new PostingList();
+        PostingIterator iterator = iterator();
+        while (iterator.next() != PostingIterator.NO_MORE_PAGES) {
+            list.add(iterator.page(), iterator.rank());
+        }
+        return list;
+    }
+
+    /**
+     * Верхняя граница рангов всего списка.
+     */
+    public float maxRank() {
+        return maxRank;
+    }
+
+    private static int blockCount(int size) {
+        return (size + SKIP_INTERVAL - 1) >> SKIP_SHIFT;
+    }
+
+    private static int varIntSize(int value) {
+        int bytes = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            bytes++;
+        }
+        return bytes;
+    }
+
+    private static void writeVarInt(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private int blockLastPage(int block) {
+        return buffer.getInt(blocksStart + block * BLOCK_ENTRY_SIZE);
+    }
+
+    private int blockOffset(int block) {
+        return buffer.getInt(blocksStart + block * BLOCK_ENTRY_SIZE + 4);
+    }
+
+    private float blockMaxRank(int block) {
+        return buffer.getFloat(blocksStart + block * BLOCK_ENTRY_SIZE + 8);
+    }
+
+    /**
+     * Первый блок начиная с from, последняя страница которого не меньше target,
+     * или blockCount, если такого нет. Поиск галопом по таблице блоков.
+     */
+    private int findBlock(int from, int target) {
+        if (from >= blockCount || blockLastPage(from) >= target) {
+            return from;
+        }
+        int low = from;
+        int step = 1;
+        int high = low + step;
+        while (high < blockCount && blockLastPage(high) < target) {
+            low = high;
+            step <<= 1;
+            high = low + step;
+        }
+        high = Math.min(high, blockCount);
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (blockLastPage(middle) < target) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return high;
+    }
+
+    private final class Iterator implements PostingIterator {
+        private int index = -1;
+        private int page = -1;
+        private int position = docsStart;
+        private int shallowBlock;
+
+        @Override
+        public int page() {
+            return page;
+        }
+
+        @Override
+        public float rank() {
+            return buffer.getFloat(ranksStart + index * 4);
+        }
+
+        @Override
+        public int next() {
+            if (++index >= count) {
+                index = count;
+                return page = NO_MORE_PAGES;
+            }
+            int b = buffer.get(position++);
+            int delta = b & 0x7F;
+            for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+                b = buffer.get(position++);
+                delta |= (b & 0x7F) << shift;
+            }
+            return page = (index == 0 ? 0 : page) + delta;
+        }
+
+        @Override
+        public int advance(int target) {
+            if (page >= target) {
+                return page;
+            }
+            int current = Math.max(index, 0) >> SKIP_SHIFT;
+            int block = findBlock(current, target);
+            if (block >= blockCount) {
+                index = count;
+                return page = NO_MORE_PAGES;
+            }
+            if (block > current) {
+                index = (block << SKIP_SHIFT) - 1;
+                page = CompressedPostings.this.blockLastPage(block - 1);
+                position = docsStart + blockOffset(block);
+            }
+            while (page < target) {
+                next();
+            }
+            return page;
+        }
+
+        @Override
+        public int cost() {
+            return count;
+        }
+
+        @Override
+        public float maxRank() {
+            return maxRank;
+        }
+
+        @Override
+        public void advanceShallow(int target) {
+            int current = Math.max(index, 0) >> SKIP_SHIFT;
+            shallowBlock = findBlock(Math.max(shallowBlock, current), target);
+        }
+
+        @Override
+        public int blockLastPage() {
+            return shallowBlock < blockCount ? CompressedPostings.this.blockLastPage(shallowBlock) : NO_MORE_PAGES;
+        }
+
+        @Override
+        public float blockMaxRank() {
+            return shallowBlock < blockCount ? CompressedPostings.this.blockMaxRank(shallowBlock) : 0;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package searchengine.services.index;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.config.IndexSettings;
+import searchengine.model.entities.SiteEntity;
+import searchengine.model.repositories.*;
+import searchengine.services.parsing.HtmlTextExtractor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Инвертированный индекс, разбитый по сайтам и хранящийся в файлах сегментов
+ * (каталог index-settings.path). При старте сегменты отображаются в память,
+ * а из таблиц lemma/search_index догружаются только страницы, не попавшие в сегменты.
+ * Индексаторы поддерживают индекс в актуальном состоянии; раз в index-settings.refresh-interval
+ * буферы сбрасываются в сегменты, а мелкие сегменты сливаются в фоне.
+ * Фиксация индекса сайта в конце обхода, публикация переиндексированной страницы и очистка индекса
+ * начинают новое поколение, по которому кэш выдачи узнаёт об устаревших результатах.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InvertedIndex {
+    private final SearchIndexRepository searchIndexRepository;
+    private final PageRepository pageRepository;
+    private final SiteRepository siteRepository;
+    private final IndexSettings indexSettings;
+    private final Map<Integer, SiteIndex> sites = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final Map<Integer, Long> siteGenerations = new ConcurrentHashMap<>();
+    private volatile long clearedGeneration;
+    private ScheduledExecutorService refresher;
+    private volatile ExecutorService mergeExecutor;
+
+    /**
+     * Открывает сегменты и догружает недостающие страницы до возобновления прерванной индексации
+     * ({@link searchengine.services.parsing.IndexingJobManager#resumeInterrupted}): страницы возобновлённого
+     * обхода должны попасть в уже открытый индекс сайта.
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    @SneakyThrows
+    public void load() {
+        long start = System.currentTimeMillis();
+        Path root = Path.of(indexSettings.getPath());
+        Files.createDirectories(root);
+        mergeExecutor = Executors.newFixedThreadPool(indexSettings.getMaxMergeThreads(), daemonThreads("index-merge"));
+        for (SiteEntity site : siteRepository.findAll()) {
+            sites.put(site.getSiteID(), openSiteIndex(site.getSiteID()));
+        }
+        try (Stream<Path> directories = Files.list(root)) {
+            for (Path directory : directories.toList()) {
+                if (!sites.containsKey(parseSiteId(directory))) {
+                    SiteIndex.open(directory, indexSettings, mergeExecutor).delete();
+                }
+            }
+        }
+
+        int committedPageId = sites.values().stream().mapToInt(SiteIndex::committedPageId).min().orElse(0);
+        int count = catchUp(committedPageId);
+        for (SiteIndex siteIndex : sites.values()) {
+            siteIndex.commit();
+        }
+        long interval = indexSettings.getRefreshInterval().toMillis();
+        refresher = Executors.newSingleThreadScheduledExecutor(daemonThreads("index-refresh"));
+        refresher.scheduleWithFixedDelay(this::refresh, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Инвертированный индекс открыт: догружено {} записей после страницы {} за {} мс",
+                count, committedPageId, System.currentTimeMillis() - start);
+    }
+
+    private void refresh() {
+        sites.forEach((siteId, siteIndex) -> {
+            try {
+                siteIndex.commit();
+            } catch (Exception e) {
+                log.error("Ошибка сброса индекса сайта {}", siteId, e);
+            }
+        });
+    }
+
+    private int catchUp(int committedPageId) throws IOException {
+        Map<Integer, PageMeta> metas = new HashMap<>();
+        try (Stream<PageView> pages = pageRepository.streamPagesAfter(committedPageId)) {
+            pages.filter(page -> isUncommitted(page.getSiteId(), page.getPageId()))
+                    .forEach(page -> metas.put(page.getPageId(), new PageMeta(page.getPagePath(),
+                            page.getPageTitle() != null
+                                    ? page.getPageTitle()
+                                    : HtmlTextExtractor.extract(page.getPageContent(), page.getPagePath()).getTitle(),
+                            0)));
+        }
+        if (metas.isEmpty()) {
+            return 0;
+        }
+
+        int lastPageId = -1;
+        int lastSiteId = -1;
+        Map<String, Float> pageLemmas = new HashMap<>();
+        int count = 0;
+        try (Stream<PostingView> postings = searchIndexRepository.streamPostingsAfter(committedPageId)) {
+            for (Iterator<PostingView> iterator = postings.iterator(); iterator.hasNext(); ) {
+                PostingView posting = iterator.next();
+                if (!metas.containsKey(posting.getPageId())) {
+                    continue;
+                }
+                if (posting.getPageId() != lastPageId && !pageLemmas.isEmpty()) {
+                    addCaughtUpPage(lastSiteId, lastPageId, metas.get(lastPageId), pageLemmas);
+                    pageLemmas.clear();
+                }
+                lastPageId = posting.getPageId();
+                lastSiteId = posting.getSiteId();
+                pageLemmas.merge(posting.getLemma(), posting.getSearchRank(), Float::sum);
+                count++;
+            }
+        }
+        if (!pageLemmas.isEmpty()) {
+            addCaughtUpPage(lastSiteId, lastPageId, metas.get(lastPageId), pageLemmas);
+        }
+        return count;
+    }
+
+    private void addCaughtUpPage(int siteId, int pageId, PageMeta meta, Map<String, Float> lemmas) throws IOException {
+        siteIndex(siteId).addPage(pageId, new PageMeta(meta.getPath(), meta.getTitle(), documentLength(lemmas)), lemmas);
+    }
+
+    private boolean isUncommitted(int siteId, int pageId) {
+        SiteIndex siteIndex = sites.get(siteId);
+        return siteIndex != null && pageId > siteIndex.committedPageId();
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (refresher != null) {
+            refresher.shutdown();
+            refresher.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        sites.forEach((siteId, siteIndex) -> commit(siteId));
+        if (mergeExecutor != null) {
+            mergeExecutor.shutdown();
+            mergeExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    @SneakyThrows
+    public void addPage(int siteId, int pageId, String path, String title, Map<String, ? extends Number> lemmas) {
+        siteIndex(siteId).addPage(pageId, new PageMeta(path, title, documentLength(lemmas)), lemmas);
+    }
+
+    /**
+     * Длина страницы в леммах: сумма рангов всех лемм страницы.
+     */
+    public static int documentLength(Map<String, ? extends Number> lemmas) {
+        int length = 0;
+        for (Number rank : lemmas.values()) {
+            length += rank.intValue();
+        }
+        return length;
+    }
+
+    public void removePage(int siteId, int pageId) {
+        SiteIndex siteIndex = sites.get(siteId);
+        if (siteIndex != null) {
+            siteIndex.removePage(pageId);
+        }
+    }
+
+    @SneakyThrows
+    public void commit(int siteId) {
+        SiteIndex siteIndex = sites.get(siteId);
+        if (siteIndex != null) {
+            siteIndex.commit();
+        }
+        publish(siteId);
+    }
+
+    /**
+     * Начинает новое поколение индекса сайта без записи сегмента: изменения уже видны поиску из буфера,
+     * на диск их запишет периодический сброс.
+     */
+    public void publish(int siteId) {
+        siteGenerations.put(siteId, generation.incrementAndGet());
+    }
+
+    @SneakyThrows
+    public void clear() {
+        for (SiteIndex siteIndex : sites.values()) {
+            siteIndex.delete();
+        }
+        sites.clear();
+        clearedGeneration = generation.incrementAndGet();
+    }
+
+    /**
+     * Поколение индекса сайта: меняется при каждой фиксации индекса сайта и при очистке индекса.
+     */
+    public long generation(int siteId) {
+        return Math.max(clearedGeneration, siteGenerations.getOrDefault(siteId, 0L));
+    }
+
+    /**
+     * Поколение индекса всех сайтов: меняется при фиксации индекса любого сайта.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    public int documentFrequency(int siteId, String lemma) {
+        SiteIndex siteIndex = sites.get(siteId);
+        return siteIndex == null ? 0 : siteIndex.documentFrequency(lemma);
+    }
+
+    public PageMeta pageMeta(int siteId, int pageId) {
+        SiteIndex siteIndex = sites.get(siteId);
+        return siteIndex == null ? null : siteIndex.pageMeta(pageId);
+    }
+
+    public void search(int siteId, List<String> lemmas, RelevanceScorer scorer, TopKCollector collector) {
+        SiteIndex siteIndex = sites.get(siteId);
+        if (siteIndex != null) {
+            siteIndex.search(lemmas, scorer, collector);
+        }
+    }
+
+    private SiteIndex siteIndex(int siteId) throws IOException {
+        SiteIndex siteIndex = sites.get(siteId);
+        if (siteIndex == null) {
+            synchronized (sites) {
+                siteIndex = sites.get(siteId);
+                if (siteIndex == null) {
+                    siteIndex = openSiteIndex(siteId);
+                    sites.put(siteId, siteIndex);
+                }
+            }
+        }
+        return siteIndex;
+    }
+
+    private SiteIndex openSiteIndex(int siteId) throws IOException {
+        return SiteIndex.open(siteDirectory(siteId), indexSettings, mergeExecutor);
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        ThreadFactory factory = Executors.defaultThreadFactory();
+        return runnable -> {
+            Thread thread = factory.newThread(runnable);
+            thread.setName(name + "-" + thread.getId());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private Path siteDirectory(int siteId) {
+        return Path.of(indexSettings.getPath(), String.valueOf(siteId));
+    }
+
+    private static int parseSiteId(Path directory) {
+        try {
+            return Integer.parseInt(directory.getFileName().toString());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package searchengine.services.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Статистика лемм по сайтам в памяти: число страниц с леммой, суммарный и наибольший ранг.
+ * Загружается из базы один раз при запуске и дальше обновляется конвейером записи страниц,
+ * поэтому планирование запроса не обращается к базе. Для каждого сайта заранее вычисляется
+ * набор стоп-лемм — search-settings.stop-lemma-percent процентов лемм, встречающихся на наибольшем
+ * числе страниц.
+ */
+@Slf4j
+@Component
+public class LemmaStatistics {
+    private static final String SELECT_STATISTICS =
+            "select l.site_id, l.lemma, l.frequency, coalesce(sum(i.search_rank), 0), coalesce(max(i.search_rank), 0) " +
+            "from lemma l left join search_index i on i.lemma_id = l.lemma_id " +
+            "where l.frequency > 0 group by l.lemma_id";
+
+    private final DataSource dataSource;
+    private final SearchSettings searchSettings;
+    private final Map<Integer, SiteLemmaStatistics> sites = new ConcurrentHashMap<>();
+
+    public LemmaStatistics(DataSource dataSource, SearchSettings searchSettings) {
+        this.dataSource = dataSource;
+        this.searchSettings = searchSettings;
+    }
+
+    /**
+     * Читает статистику всех лемм одним потоковым запросом до возобновления прерванной индексации.
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        int count = 0;
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet resultSet = statement.executeQuery(SELECT_STATISTICS)) {
+                while (resultSet.next()) {
+                    site(resultSet.getInt(1)).load(resultSet.getString(2), resultSet.getInt(3),
+                            resultSet.getDouble(4), resultSet.getFloat(5));
+                    count++;
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Статистика лемм не загружена", e);
+            return;
+        }
+        sites.keySet().forEach(this::refreshStopLemmas);
+        log.info("Загружена статистика {} лемм по {} сайтам за {} мс", count, sites.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Учитывает леммы добавленной страницы.
+     */
+    public void addPage(int siteId, Map<String, ? extends Number> ranks) {
+        site(siteId).add(ranks, 1);
+    }
+
+    /**
+     * Вычитает леммы удалённой или заменённой страницы. Наибольший ранг при этом не уменьшается
+     * и остаётся верхней границей.
+     */
+    public void removePage(int siteId, Map<String, ? extends Number> ranks) {
+        site(siteId).add(ranks, -1);
+    }
+
+    /**
+     * Пересчитывает стоп-леммы сайта после пакета изменений.
+     */
+    public void refreshStopLemmas(int siteId) {
+        SiteLemmaStatistics site = sites.get(siteId);
+        if (site != null) {
+            site.refreshStopLemmas(searchSettings.getStopLemmaPercent());
+        }
+    }
+
+    public int documentFrequency(int siteId, String lemma) {
+        SiteLemmaStatistics site = sites.get(siteId);
+        return site == null ? 0 : site.documentFrequency(lemma);
+    }
+
+    public double totalRank(int siteId, String lemma) {
+        SiteLemmaStatistics site = sites.get(siteId);
+        return site == null ? 0 : site.totalRank(lemma);
+    }
+
+    public float maxRank(int siteId, String lemma) {
+        SiteLemmaStatistics site = sites.get(siteId);
+        return site == null ? 0 : site.maxRank(lemma);
+    }
+
+    public int lemmaCount(int siteId) {
+        SiteLemmaStatistics site = sites.get(siteId);
+        return site == null ? 0 : site.lemmaCount();
+    }
+
+    /**
+     * Леммы запроса без стоп-лемм сайта в исходном порядке.
+     * Если стоп-леммами оказались все леммы запроса, они возвращаются без изменений.
+     */
+    public List<String> withoutStopLemmas(int siteId, List<String> lemmas) {
+        SiteLemmaStatistics site = sites.get(siteId);
+        if (site == null) {
+            return lemmas;
+        }
+        List<String> filtered = site.withoutStopLemmas(lemmas);
+        return filtered.isEmpty() ? lemmas : filtered;
+    }
+
+    public void clear() {
+        sites.clear();
+    }
+
+    private SiteLemmaStatistics site(int siteId) {
+        return sites.computeIfAbsent(siteId, id -> new SiteLemmaStatistics());
+    }
+
+    /**
+     * Статистика одного сайта: леммам выдаются плотные номера, по которым хранятся массивы
+     * счётчиков и битовый набор стоп-лемм.
+     */
+    private static final class SiteLemmaStatistics {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private int[] documentFrequency = new int[1024];
+        private double[] totalRank = new double[1024];
+        private float[] maxRank = new float[1024];
+        private final Object refreshLock = new Object();
+        private volatile BitSet stopLemmas = new BitSet();
+        private int liveLemmas;
+        private boolean changed;
+
+        synchronized void load(String lemma, int frequency, double total, float max) {
+            int id = id(lemma);
+            if (documentFrequency[id] == 0 && frequency > 0) {
+                liveLemmas++;
+            }
+            documentFrequency[id] = frequency;
+            totalRank[id] = total;
+            maxRank[id] = max;
+            changed = true;
+        }
+
+        synchronized void add(Map<String, ? extends Number> ranks, int sign) {
+            for (Map.Entry<String, ? extends Number> entry : ranks.entrySet()) {
+                int id = id(entry.getKey());
+                float rank = entry.getValue().floatValue();
+                int before = documentFrequency[id];
+                documentFrequency[id] = Math.max(0, before + sign);
+                totalRank[id] = documentFrequency[id] == 0 ? 0 : totalRank[id] + sign * rank;
+                if (sign > 0) {
+                    maxRank[id] = Math.max(maxRank[id], rank);
+                }
+                if (before == 0 && documentFrequency[id] > 0) {
+                    liveLemmas++;
+                } else if (before > 0 && documentFrequency[id] == 0) {
+                    liveLemmas--;
+                    maxRank[id] = 0;
+                }
+            }
+            changed = true;
+        }
+
+        /**
+         * Отмечает стоп-леммами не больше percent процентов лемм сайта с наибольшим числом страниц;
+         * леммы с одинаковой частотой на границе в набор не попадают. Под монитором статистики
+         * только копируются частоты, сортировка и построение набора идут вне его, поэтому поиск
+         * не ждёт пересчёта; готовый набор публикуется заменой ссылки.
+         */
+        void refreshStopLemmas(int percent) {
+            synchronized (refreshLock) {
+                int[] frequencies;
+                synchronized (this) {
+                    if (!changed) {
+                        return;
+                    }
+                    changed = false;
+                    frequencies = Arrays.copyOf(documentFrequency, ids.size());
+                }
+                stopLemmas = stopLemmas(frequencies, percent);
+            }
+        }
+
+        private static BitSet stopLemmas(int[] frequencies, int percent) {
+            int[] sorted = new int[frequencies.length];
+            int n = 0;
+            for (int frequency : frequencies) {
+                if (frequency > 0) {
+                    sorted[n++] = frequency;
+                }
+            }
+            BitSet stop = new BitSet(frequencies.length);
+            int limit = (int) ((long) n * percent / 100);
+            if (limit == 0) {
+                return stop;
+            }
+            Arrays.sort(sorted, 0, n);
+            int threshold = limit < n ? sorted[n - limit - 1] : 0;
+            for (int id = 0; id < frequencies.length; id++) {
+                if (frequencies[id] > threshold) {
+                    stop.set(id);
+                }
+            }
+            return stop;
+        }
+
+        synchronized int documentFrequency(String lemma) {
+            Integer id = ids.get(lemma);
+            return id == null ? 0 : documentFrequency[id];
+        }
+
+        synchronized double totalRank(String lemma) {
+            Integer id = ids.get(lemma);
+            return id == null ? 0 : totalRank[id];
+        }
+
+        synchronized float maxRank(String lemma) {
+            Integer id = ids.get(lemma);
+            return id == null ? 0 : maxRank[id];
+        }
+
+        synchronized int lemmaCount() {
+            return liveLemmas;
+        }
+
+        synchronized List<String> withoutStopLemmas(List<String> lemmas) {
+            BitSet stopLemmas = this.stopLemmas;
+            List<String> filtered = new ArrayList<>(lemmas.size());
+            for (String lemma : lemmas) {
+                Integer id = ids.get(lemma);
+                if (id == null || !stopLemmas.get(id)) {
+                    filtered.add(lemma);
+                }
+            }
+            return filtered;
+        }
+
+        private int id(String lemma) {
+            Integer id = ids.get(lemma);
+            if (id == null) {
+                id = ids.size();
+                ids.put(lemma, id);
+                if (id == documentFrequency.length) {
+                    int capacity = id * 2;
+                    documentFrequency = Arrays.copyOf(documentFrequency, capacity);
+                    totalRank = Arrays.copyOf(totalRank, capacity);
+                    maxRank = Arrays.copyOf(maxRank, capacity);
+                }
+            }
+            return id;
+        }
+    }
+}
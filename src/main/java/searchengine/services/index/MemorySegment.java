@@ -0,0 +1,81 @@
+package searchengine.services.index;
+
+import java.util.*;
+
+/**
+ * Буфер индекса в памяти. Пока буфер активен, страницы в нём изменяются на месте;
+ * после заморозки (на время записи на диск) удаления только отмечаются.
+ */
+class MemorySegment {
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final Map<Integer, PageMeta> pages = new HashMap<>();
+    private final Set<Integer> deleted = new HashSet<>();
+    private boolean frozen;
+
+    void add(int pageId, PageMeta meta, Map<String, ? extends Number> lemmas) {
+        for (Map.Entry<String, ? extends Number> lemma : lemmas.entrySet()) {
+            postings.computeIfAbsent(lemma.getKey(), key -> new PostingList())
+                    .add(pageId, lemma.getValue().floatValue());
+        }
+        pages.put(pageId, meta);
+    }
+
+    void remove(int pageId) {
+        if (!pages.containsKey(pageId)) {
+            return;
+        }
+        if (frozen) {
+            deleted.add(pageId);
+            return;
+        }
+        pages.remove(pageId);
+        Iterator<PostingList> iterator = postings.values().iterator();
+        while (iterator.hasNext()) {
+            PostingList list = iterator.next();
+            if (list.remove(pageId) && list.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    void freeze() {
+        frozen = true;
+    }
+
+    boolean isDeleted(int pageId) {
+        return !deleted.isEmpty() && deleted.contains(pageId);
+    }
+
+    Set<Integer> deleted() {
+        return deleted;
+    }
+
+    PostingList postings(String lemma) {
+        return postings.get(lemma);
+    }
+
+    Map<String, PostingList> postings() {
+        return postings;
+    }
+
+    Map<Integer, PageMeta> pages() {
+        return pages;
+    }
+
+    PageMeta pageMeta(int pageId) {
+        return isDeleted(pageId) ? null : pages.get(pageId);
+    }
+
+    int docLength(int pageId) {
+        PageMeta meta = pages.get(pageId);
+        return meta == null ? 0 : meta.getLength();
+    }
+
+    boolean isEmpty() {
+        return pages.isEmpty();
+    }
+
+    int size() {
+        return pages.size();
+    }
+}
@@ -0,0 +1,13 @@
+package searchengine.services.index;
+
+import lombok.Data;
+
+@Data
+public class PageMeta {
+    private final String path;
+    private final String title;
+    /**
+     * Длина страницы в леммах (сумма рангов всех лемм страницы), используется для нормировки релевантности.
+     */
+    private final int length;
+}
@@ -0,0 +1,103 @@
+package searchengine.services.index;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Пересечение (AND) списков вхождений: самый короткий список ведёт,
+ * остальные догоняют его через {@link PostingIterator#advance(int)}.
+ */
+public final class PostingIntersection {
+
+    public interface Collector {
+        /**
+         * Вызывается для каждой страницы, содержащей все леммы.
+         * Итераторы передаются в исходном порядке и стоят на этой странице.
+         */
+        void collect(int page, PostingIterator[] iterators);
+    }
+
+    private PostingIntersection() {
+    }
+
+    public static void intersect(PostingIterator[] iterators, Collector collector) {
+        if (iterators.length == 0) {
+            return;
+        }
+        PostingIterator[] byCost = iterators.clone();
+        Arrays.sort(byCost, Comparator.comparingInt(PostingIterator::cost));
+        PostingIterator lead = byCost[0];
+
+        int page = lead.next();
+        candidates:
+        while (page != PostingIterator.NO_MORE_PAGES) {
+            for (int i = 1; i < byCost.length; i++) {
+                int other = byCost[i].advance(page);
+                if (other > page) {
+                    page = lead.advance(other);
+                    continue candidates;
+                }
+            }
+            collector.collect(page, iterators);
+            page = lead.next();
+        }
+    }
+
+    /**
+     * Пересечение с отбором лучших страниц (block-max AND). Если сумма верхних границ релевантности
+     * текущих блоков всех лемм не может превзойти худший из отобранных результатов,
+     * диапазон до конца ближайшего блока пропускается без декодирования и без проверки остальных списков.
+     */
+    static void topK(PostingIterator[] iterators, IntPredicate deleted, IntUnaryOperator lengths,
+                     QueryScorer scorer, TopKCollector collector) {
+        if (iterators.length == 0) {
+            return;
+        }
+        float maxScore = 0;
+        for (int i = 0; i < iterators.length; i++) {
+            maxScore += scorer.maxScore(i, iterators[i].maxRank());
+        }
+        if (collector.canSkip() && !collector.isCompetitive(maxScore, 0)) {
+            collector.skipped();
+            return;
+        }
+        PostingIterator[] byCost = iterators.clone();
+        Arrays.sort(byCost, Comparator.comparingInt(PostingIterator::cost));
+        PostingIterator lead = byCost[0];
+
+        int page = lead.next();
+        candidates:
+        while (page != PostingIterator.NO_MORE_PAGES) {
+            if (collector.canSkip()) {
+                float bound = 0;
+                int blockEnd = PostingIterator.NO_MORE_PAGES;
+                for (int i = 0; i < iterators.length; i++) {
+                    iterators[i].advanceShallow(page);
+                    bound += scorer.maxScore(i, iterators[i].blockMaxRank());
+                    blockEnd = Math.min(blockEnd, iterators[i].blockLastPage());
+                }
+                if (!collector.isCompetitive(bound, page)) {
+                    collector.skipped();
+                    if (blockEnd == PostingIterator.NO_MORE_PAGES) {
+                        return;
+                    }
+                    page = lead.advance(blockEnd + 1);
+                    continue;
+                }
+            }
+            for (int i = 1; i < byCost.length; i++) {
+                int other = byCost[i].advance(page);
+                if (other > page) {
+                    page = lead.advance(other);
+                    continue candidates;
+                }
+            }
+            if (!deleted.test(page)) {
+                collector.collect(page, scorer.score(iterators, lengths.applyAsInt(page)));
+            }
+            page = lead.next();
+        }
+    }
+}
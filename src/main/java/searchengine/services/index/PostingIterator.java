@@ -0,0 +1,44 @@
+package searchengine.services.index;
+
+/**
+ * Последовательный обход списка вхождений в порядке возрастания идентификаторов страниц.
+ */
+public interface PostingIterator {
+    int NO_MORE_PAGES = Integer.MAX_VALUE;
+
+    /**
+     * Текущая страница: -1 до первого вызова {@link #next()}, {@link #NO_MORE_PAGES} после окончания списка.
+     */
+    int page();
+
+    float rank();
+
+    int next();
+
+    /**
+     * Переходит к первой странице, идентификатор которой не меньше target.
+     */
+    int advance(int target);
+
+    int cost();
+
+    /**
+     * Верхняя граница рангов во всём списке.
+     */
+    float maxRank();
+
+    /**
+     * Переводит указатель блоков к блоку, который может содержать target, не декодируя записи.
+     */
+    void advanceShallow(int target);
+
+    /**
+     * Последняя страница блока, выбранного {@link #advanceShallow(int)}.
+     */
+    int blockLastPage();
+
+    /**
+     * Верхняя граница рангов в блоке, выбранном {@link #advanceShallow(int)}.
+     */
+    float blockMaxRank();
+}
@@ -0,0 +1,149 @@
+package searchengine.services.index;
+
+import java.util.Arrays;
+
+/**
+ * Список вхождений леммы: идентификаторы страниц в порядке возрастания
+ * и параллельный массив рангов (количество вхождений леммы на странице).
+ */
+public class PostingList {
+    private int[] pages = new int[4];
+    private float[] ranks = new float[4];
+    private int size;
+    private float maxRank;
+
+    public void add(int pageId, float rank) {
+        maxRank = Math.max(maxRank, rank);
+        if (size == pages.length) {
+            pages = Arrays.copyOf(pages, size * 2);
+            ranks = Arrays.copyOf(ranks, size * 2);
+        }
+        if (size == 0 || pages[size - 1] < pageId) {
+            pages[size] = pageId;
+            ranks[size] = rank;
+            size++;
+            return;
+        }
+        int index = Arrays.binarySearch(pages, 0, size, pageId);
+        if (index >= 0) {
+            ranks[index] = rank;
+            return;
+        }
+        int insertion = -index - 1;
+        System.arraycopy(pages, insertion, pages, insertion + 1, size - insertion);
+        System.arraycopy(ranks, insertion, ranks, insertion + 1, size - insertion);
+        pages[insertion] = pageId;
+        ranks[insertion] = rank;
+        size++;
+    }
+
+    public boolean remove(int pageId) {
+        int index = indexOf(pageId);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(pages, index + 1, pages, index, size - index - 1);
+        System.arraycopy(ranks, index + 1, ranks, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    public int indexOf(int pageId) {
+        int index = Arrays.binarySearch(pages, 0, size, pageId);
+        return index >= 0 ? index : -1;
+    }
+
+    public int pageAt(int index) {
+        return pages[index];
+    }
+
+    public float rankAt(int index) {
+        return ranks[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public PostingIterator iterator() {
+        return new Iterator();
+    }
+
+    private final class Iterator implements PostingIterator {
+        private int index = -1;
+        private int page = -1;
+        private boolean shallowExhausted;
+
+        @Override
+        public int page() {
+            return page;
+        }
+
+        @Override
+        public float rank() {
+            return ranks[index];
+        }
+
+        @Override
+        public int next() {
+            if (++index >= size) {
+                index = size;
+                return page = NO_MORE_PAGES;
+            }
+            return page = pages[index];
+        }
+
+        @Override
+        public int advance(int target) {
+            if (page >= target) {
+                return page;
+            }
+            int from = index + 1;
+            int to = from;
+            for (int step = 1; to < size && pages[to] < target; step <<= 1) {
+                from = to + 1;
+                to += step;
+            }
+            int found = Arrays.binarySearch(pages, from, Math.min(to + 1, size), target);
+            index = found >= 0 ? found : -found - 1;
+            if (index >= size) {
+                index = size;
+                return page = NO_MORE_PAGES;
+            }
+            return page = pages[index];
+        }
+
+        @Override
+        public int cost() {
+            return size;
+        }
+
+        /**
+         * Буфер в памяти невелик, поэтому весь список считается одним блоком.
+         * После удалений граница может быть завышена, что допустимо.
+         */
+        @Override
+        public float maxRank() {
+            return maxRank;
+        }
+
+        @Override
+        public void advanceShallow(int target) {
+            shallowExhausted = size == 0 || pages[size - 1] < target;
+        }
+
+        @Override
+        public int blockLastPage() {
+            return shallowExhausted ? NO_MORE_PAGES : pages[size - 1];
+        }
+
+        @Override
+        public float blockMaxRank() {
+            return shallowExhausted ? 0 : maxRank;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package searchengine.services.index;
+
+/**
+ * Функция релевантности, привязанная к запросу: веса лемм и средняя длина страницы
+ * вычисляются один раз, подсчёт релевантности страницы не создаёт объектов.
+ */
+final class QueryScorer {
+    private final RelevanceScorer scorer;
+    private final float[] weights;
+    private final float averageLength;
+
+    QueryScorer(RelevanceScorer scorer, float[] weights, float averageLength) {
+        this.scorer = scorer;
+        this.weights = weights;
+        this.averageLength = averageLength;
+    }
+
+    /**
+     * Релевантность страницы, на которой стоят все итераторы (в порядке лемм запроса).
+     */
+    float score(PostingIterator[] iterators, int length) {
+        float score = 0;
+        for (int i = 0; i < iterators.length; i++) {
+            score += scorer.score(weights[i], iterators[i].rank(), length, averageLength);
+        }
+        return score;
+    }
+
+    float maxScore(int lemma, float maxRank) {
+        return scorer.maxScore(weights[lemma], maxRank);
+    }
+}
@@ -0,0 +1,25 @@
+package searchengine.services.index;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Прежняя релевантность: сумма рангов лемм запроса на странице без учёта частоты лемм и длины страницы.
+ */
+@Component("rank-sum")
+public class RankSumScorer implements RelevanceScorer {
+
+    @Override
+    public float weight(int documentFrequency, int documentCount) {
+        return 1;
+    }
+
+    @Override
+    public float score(float weight, float rank, int length, float averageLength) {
+        return rank;
+    }
+
+    @Override
+    public float maxScore(float weight, float maxRank) {
+        return maxRank;
+    }
+}
@@ -0,0 +1,23 @@
+package searchengine.services.index;
+
+/**
+ * Функция релевантности страницы запросу. Релевантность страницы - сумма вкладов лемм запроса,
+ * вклад леммы зависит от её веса в коллекции, ранга леммы на странице и длины страницы.
+ */
+public interface RelevanceScorer {
+
+    /**
+     * Вес леммы, вычисляется один раз на запрос.
+     *
+     * @param documentFrequency число страниц сайта, содержащих лемму
+     * @param documentCount     число страниц сайта
+     */
+    float weight(int documentFrequency, int documentCount);
+
+    float score(float weight, float rank, int length, float averageLength);
+
+    /**
+     * Верхняя граница вклада леммы на любой странице при ранге не выше maxRank.
+     */
+    float maxScore(float weight, float maxRank);
+}
@@ -0,0 +1,230 @@
+package searchengine.services.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * Неизменяемый сегмент индекса, отображённый в память через {@link FileChannel#map}.
+ * Словарь терминов, списки вхождений и метаданные страниц читаются прямо из отображения.
+ * Удалённые страницы отмечаются в битовой карте по порядковому номеру страницы в сегменте,
+ * которая сохраняется рядом с сегментом в файле .del.
+ */
+public class Segment {
+    private final Path file;
+    private final ByteBuffer buffer;
+    private final int termCount;
+    private final int pageCount;
+    private final int termIndexOffset;
+    private final int pagesOffset;
+    private final BitSet deleted;
+    private boolean deletionsChanged;
+
+    private Segment(Path file, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.getInt(0) != SegmentWriter.MAGIC || buffer.getInt(4) != SegmentWriter.VERSION) {
+            throw new IOException("Неподдерживаемый формат сегмента: " + file);
+        }
+        this.termCount = buffer.getInt(8);
+        this.pageCount = buffer.getInt(12);
+        this.termIndexOffset = buffer.getInt(16);
+        this.pagesOffset = buffer.getInt(24);
+        Path deletions = deletionsFile(file);
+        this.deleted = Files.exists(deletions) ? BitSet.valueOf(Files.readAllBytes(deletions)) : new BitSet();
+    }
+
+    public static Segment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new Segment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static Path deletionsFile(Path file) {
+        String name = file.getFileName().toString();
+        return file.resolveSibling(name.substring(0, name.lastIndexOf('.')) + ".del");
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * Снимок битовой карты удалённых страниц для записи на диск или null, если она не менялась.
+     * Вызывается под блокировкой индекса, сама запись выполняется вне её.
+     */
+    public byte[] takeChangedDeletions() {
+        if (!deletionsChanged) {
+            return null;
+        }
+        deletionsChanged = false;
+        return deleted.toByteArray();
+    }
+
+    public void writeDeletions(byte[] deletions) throws IOException {
+        Path target = deletionsFile(file);
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(temporary, deletions);
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(deletionsFile(file));
+        Files.deleteIfExists(file);
+    }
+
+    public int termCount() {
+        return termCount;
+    }
+
+    public String term(int ordinal) {
+        int entry = buffer.getInt(termIndexOffset + ordinal * 4);
+        return readString(entry + 2, buffer.getShort(entry) & 0xFFFF);
+    }
+
+    public CompressedPostings termPostings(int ordinal) {
+        int entry = buffer.getInt(termIndexOffset + ordinal * 4);
+        return CompressedPostings.read(buffer, buffer.getInt(entry + 2 + (buffer.getShort(entry) & 0xFFFF)));
+    }
+
+    public CompressedPostings postings(String lemma) {
+        byte[] key = lemma.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = buffer.getInt(termIndexOffset + middle * 4);
+            int compare = compareTerm(entry, key);
+            if (compare < 0) {
+                low = middle + 1;
+            } else if (compare > 0) {
+                high = middle - 1;
+            } else {
+                return CompressedPostings.read(buffer, buffer.getInt(entry + 2 + key.length));
+            }
+        }
+        return null;
+    }
+
+    public PageMeta pageMeta(int pageId) {
+        int ordinal = ordinal(pageId);
+        if (ordinal < 0) {
+            return null;
+        }
+        return pageMetaAt(ordinal);
+    }
+
+    public PageMeta pageMetaAt(int ordinal) {
+        int entry = buffer.getInt(pagesOffset + pageCount * 4 + ordinal * 4);
+        int pathLength = buffer.getInt(entry);
+        String path = readString(entry + 4, pathLength);
+        int titleEntry = entry + 4 + pathLength;
+        return new PageMeta(path, readString(titleEntry + 4, buffer.getInt(titleEntry)), docLengthAt(ordinal));
+    }
+
+    public int docLengthAt(int ordinal) {
+        return buffer.getInt(pagesOffset + pageCount * 8 + ordinal * 4);
+    }
+
+    public int docLength(int pageId) {
+        int ordinal = ordinal(pageId);
+        return ordinal < 0 ? 0 : docLengthAt(ordinal);
+    }
+
+    public boolean delete(int pageId) {
+        int ordinal = ordinal(pageId);
+        if (ordinal < 0) {
+            return false;
+        }
+        if (deleted.get(ordinal)) {
+            return false;
+        }
+        deleted.set(ordinal);
+        deletionsChanged = true;
+        return true;
+    }
+
+    /**
+     * Отмечает удалёнными страницы, удалённые в другом сегменте после снимка его битовой карты.
+     */
+    public void applyDeletions(Segment source, BitSet snapshot) {
+        BitSet added = (BitSet) source.deleted.clone();
+        added.andNot(snapshot);
+        for (int ordinal = added.nextSetBit(0); ordinal >= 0; ordinal = added.nextSetBit(ordinal + 1)) {
+            delete(source.pageIdAt(ordinal));
+        }
+    }
+
+    public BitSet deletedSnapshot() {
+        return (BitSet) deleted.clone();
+    }
+
+    public boolean isDeleted(int pageId) {
+        if (deleted.isEmpty()) {
+            return false;
+        }
+        int ordinal = ordinal(pageId);
+        return ordinal >= 0 && deleted.get(ordinal);
+    }
+
+    public int pageCount() {
+        return pageCount - deleted.cardinality();
+    }
+
+    public int totalPages() {
+        return pageCount;
+    }
+
+    public int deletedPages() {
+        return deleted.cardinality();
+    }
+
+    public int pageIdAt(int ordinal) {
+        return buffer.getInt(pagesOffset + ordinal * 4);
+    }
+
+    public int maxPageId() {
+        return pageCount == 0 ? 0 : buffer.getInt(pagesOffset + (pageCount - 1) * 4);
+    }
+
+    public int ordinal(int pageId) {
+        int low = 0;
+        int high = pageCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = buffer.getInt(pagesOffset + middle * 4);
+            if (value < pageId) {
+                low = middle + 1;
+            } else if (value > pageId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compareTerm(int entry, byte[] key) {
+        int length = buffer.getShort(entry) & 0xFFFF;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int compare = (buffer.get(entry + 2 + i) & 0xFF) - (key[i] & 0xFF);
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return length - key.length;
+    }
+
+    private String readString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
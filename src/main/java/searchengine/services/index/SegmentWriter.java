@@ -0,0 +1,118 @@
+package searchengine.services.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Запись неизменяемого файла сегмента.
+ * Формат: заголовок, таблица смещений терминов, словарь терминов
+ * ([длина][лемма UTF-8][смещение списка вхождений]), отсортированные идентификаторы страниц,
+ * смещения записей метаданных, длины страниц в леммах, записи метаданных страниц
+ * ([длина][путь][длина][заголовок]), сжатые списки вхождений.
+ */
+public final class SegmentWriter {
+    static final int MAGIC = 0x53454731;
+    static final int VERSION = 3;
+    static final int HEADER_SIZE = 32;
+
+    private SegmentWriter() {
+    }
+
+    public static void write(Path file,
+                             Map<String, PostingList> postings,
+                             Map<Integer, PageMeta> pages) throws IOException {
+        List<Map.Entry<byte[], PostingList>> terms = new ArrayList<>(postings.size());
+        postings.forEach((lemma, list) -> {
+            if (!list.isEmpty()) {
+                terms.add(Map.entry(lemma.getBytes(StandardCharsets.UTF_8), list));
+            }
+        });
+        terms.sort((a, b) -> Arrays.compareUnsigned(a.getKey(), b.getKey()));
+
+        int[] pageIds = new TreeSet<>(pages.keySet()).stream().mapToInt(Integer::intValue).toArray();
+        List<byte[]> metas = new ArrayList<>(pageIds.length * 2);
+        for (int pageId : pageIds) {
+            PageMeta meta = pages.get(pageId);
+            metas.add(bytes(meta.getPath()));
+            metas.add(bytes(meta.getTitle()));
+        }
+
+        int termIndexOffset = HEADER_SIZE;
+        int termDataOffset = termIndexOffset + terms.size() * 4;
+        int termDataSize = 0;
+        for (Map.Entry<byte[], PostingList> term : terms) {
+            termDataSize += 2 + term.getKey().length + 4;
+        }
+        int pagesOffset = termDataOffset + termDataSize;
+        int metaDataOffset = pagesOffset + pageIds.length * 12;
+        int metaDataSize = 0;
+        for (byte[] meta : metas) {
+            metaDataSize += 4 + meta.length;
+        }
+        int postingsOffset = metaDataOffset + metaDataSize;
+        long size = postingsOffset;
+        for (Map.Entry<byte[], PostingList> term : terms) {
+            size += CompressedPostings.encodedSize(term.getValue());
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Сегмент превышает 2 ГБ: " + file);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(terms.size())
+                .putInt(pageIds.length)
+                .putInt(termIndexOffset)
+                .putInt(termDataOffset)
+                .putInt(pagesOffset)
+                .putInt(postingsOffset);
+
+        buffer.position(postingsOffset);
+        int termEntry = termDataOffset;
+        for (int i = 0; i < terms.size(); i++) {
+            byte[] lemma = terms.get(i).getKey();
+            buffer.putInt(termIndexOffset + i * 4, termEntry);
+            buffer.putShort(termEntry, (short) lemma.length);
+            buffer.put(termEntry + 2, lemma);
+            buffer.putInt(termEntry + 2 + lemma.length, buffer.position());
+            termEntry += 2 + lemma.length + 4;
+            CompressedPostings.write(terms.get(i).getValue(), buffer);
+        }
+
+        int metaEntry = metaDataOffset;
+        for (int i = 0; i < pageIds.length; i++) {
+            buffer.putInt(pagesOffset + i * 4, pageIds[i]);
+            buffer.putInt(pagesOffset + pageIds.length * 4 + i * 4, metaEntry);
+            buffer.putInt(pagesOffset + pageIds.length * 8 + i * 4, pages.get(pageIds[i]).getLength());
+            for (int j = 0; j < 2; j++) {
+                byte[] meta = metas.get(i * 2 + j);
+                buffer.putInt(metaEntry, meta.length);
+                buffer.put(metaEntry + 4, meta);
+                metaEntry += 4 + meta.length;
+            }
+        }
+        buffer.position(0);
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,541 @@
+package searchengine.services.index;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.IndexSettings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Инвертированный индекс одного сайта, организованный как журнал сегментов.
+ * Новые страницы попадают в буфер в памяти и сразу доступны поиску. Периодически
+ * (index-settings.refresh-interval) буфер замораживается и записывается на диск
+ * неизменяемым {@link Segment}; удаления отмечаются в битовых картах сегментов.
+ * Мелкие сегменты сливаются в фоне по {@link TieredMergePolicy} на отдельном пуле потоков.
+ * Под блокировкой индекса выполняются только операции в памяти, запись файлов идёт вне её,
+ * поэтому сброс буфера и слияния не задерживают поисковые запросы.
+ */
+@Slf4j
+public class SiteIndex {
+    private static final String MANIFEST = "manifest";
+    private static final String SEGMENT_PREFIX = "seg_";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final IndexSettings settings;
+    private final TieredMergePolicy mergePolicy;
+    private final Executor mergeExecutor;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object commitLock = new Object();
+    private final AtomicInteger nextSegment = new AtomicInteger();
+
+    private MemorySegment buffer = new MemorySegment();
+    private final Deque<MemorySegment> flushing = new ArrayDeque<>();
+    private List<Segment> segments = List.of();
+    private final Set<Segment> merging = new HashSet<>();
+    private volatile int committedPageId;
+    private volatile boolean closed;
+    private int liveDocs;
+    private long totalLength;
+    private long generation;
+    private volatile long frequenciesGeneration = -1;
+    private final Map<String, Integer> documentFrequencies = new ConcurrentHashMap<>();
+
+    private SiteIndex(Path directory, IndexSettings settings, Executor mergeExecutor) {
+        this.directory = directory;
+        this.settings = settings;
+        this.mergePolicy = new TieredMergePolicy(settings);
+        this.mergeExecutor = mergeExecutor;
+    }
+
+    public static SiteIndex open(Path directory, IndexSettings settings, Executor mergeExecutor) throws IOException {
+        SiteIndex index = new SiteIndex(directory, settings, mergeExecutor);
+        Files.createDirectories(directory);
+        Path manifest = directory.resolve(MANIFEST);
+        if (Files.exists(manifest)) {
+            Properties properties = new Properties();
+            try (InputStream input = Files.newInputStream(manifest)) {
+                properties.load(input);
+            }
+            if (String.valueOf(SegmentWriter.VERSION).equals(properties.getProperty("version"))) {
+                List<Segment> segments = new ArrayList<>();
+                try {
+                    for (String name : properties.getProperty("segments", "").split(",")) {
+                        if (!name.isBlank()) {
+                            segments.add(Segment.open(directory.resolve(name)));
+                        }
+                    }
+                    index.segments = List.copyOf(segments);
+                    index.nextSegment.set(Integer.parseInt(properties.getProperty("nextSegment", "0")));
+                    index.committedPageId = Integer.parseInt(properties.getProperty("committedPageId", "0"));
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Индекс {} повреждён и будет перестроен: {}", directory, e.getMessage());
+                    index.segments = List.of();
+                    index.committedPageId = 0;
+                }
+            } else {
+                log.info("Формат индекса {} устарел, индекс будет перестроен", directory);
+            }
+        }
+        index.deleteUnreferencedFiles();
+        index.countLivePages();
+        return index;
+    }
+
+    private void countLivePages() {
+        for (Segment segment : segments) {
+            BitSet deleted = segment.deletedSnapshot();
+            for (int ordinal = 0; ordinal < segment.totalPages(); ordinal++) {
+                if (!deleted.get(ordinal)) {
+                    liveDocs++;
+                    totalLength += segment.docLengthAt(ordinal);
+                }
+            }
+        }
+    }
+
+    /**
+     * Наибольший идентификатор страницы, гарантированно записанной в сегменты.
+     */
+    public int committedPageId() {
+        return committedPageId;
+    }
+
+    public void addPage(int pageId, PageMeta meta, Map<String, ? extends Number> lemmas) {
+        lock.writeLock().lock();
+        try {
+            buffer.add(pageId, meta, lemmas);
+            liveDocs++;
+            totalLength += meta.getLength();
+            generation++;
+            if (buffer.size() >= settings.getFlushPages()) {
+                rotateBuffer();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removePage(int pageId) {
+        lock.writeLock().lock();
+        try {
+            PageMeta meta = livePageMeta(pageId);
+            if (meta == null) {
+                return;
+            }
+            liveDocs--;
+            totalLength -= meta.getLength();
+            generation++;
+            for (Segment segment : segments) {
+                segment.delete(pageId);
+            }
+            for (MemorySegment frozen : flushing) {
+                frozen.remove(pageId);
+            }
+            buffer.remove(pageId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Записывает буфер в новый сегмент, сохраняет удаления и manifest,
+     * при необходимости запускает фоновое слияние.
+     */
+    public void commit() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!buffer.isEmpty()) {
+                rotateBuffer();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        synchronized (commitLock) {
+            flushFrozen();
+            writeDeletions();
+        }
+        maybeMerge();
+    }
+
+    /**
+     * Закрывает индекс и удаляет все его файлы.
+     */
+    public void delete() throws IOException {
+        closed = true;
+        lock.writeLock().lock();
+        try {
+            segments = List.of();
+            flushing.clear();
+            buffer = new MemorySegment();
+            liveDocs = 0;
+            totalLength = 0;
+            generation++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        synchronized (commitLock) {
+            if (Files.exists(directory)) {
+                try (Stream<Path> files = Files.list(directory)) {
+                    for (Path file : files.toList()) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+                Files.deleteIfExists(directory);
+            }
+        }
+    }
+
+    private void rotateBuffer() {
+        buffer.freeze();
+        flushing.addLast(buffer);
+        buffer = new MemorySegment();
+    }
+
+    private void flushFrozen() throws IOException {
+        while (!closed) {
+            MemorySegment frozen;
+            lock.readLock().lock();
+            try {
+                frozen = flushing.peekFirst();
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (frozen == null) {
+                return;
+            }
+            Segment segment = null;
+            if (!frozen.isEmpty()) {
+                Path file = newSegmentFile();
+                SegmentWriter.write(file, frozen.postings(), frozen.pages());
+                segment = Segment.open(file);
+            }
+            lock.writeLock().lock();
+            try {
+                if (segment != null) {
+                    for (int pageId : frozen.deleted()) {
+                        segment.delete(pageId);
+                    }
+                    segments = append(segments, segment);
+                    committedPageId = Math.max(committedPageId, segment.maxPageId());
+                }
+                flushing.removeFirst();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            writeManifest();
+        }
+    }
+
+    private void writeDeletions() throws IOException {
+        Map<Segment, byte[]> changed = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (Segment segment : segments) {
+                byte[] deletions = segment.takeChangedDeletions();
+                if (deletions != null) {
+                    changed.put(segment, deletions);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (Map.Entry<Segment, byte[]> entry : changed.entrySet()) {
+            entry.getKey().writeDeletions(entry.getValue());
+        }
+    }
+
+    private void maybeMerge() {
+        List<Segment> sources;
+        Map<Segment, BitSet> snapshots = new HashMap<>();
+        lock.writeLock().lock();
+        try {
+            if (closed || !merging.isEmpty()) {
+                return;
+            }
+            sources = mergePolicy.findMerge(segments);
+            if (sources.isEmpty()) {
+                return;
+            }
+            merging.addAll(sources);
+            sources.forEach(source -> snapshots.put(source, source.deletedSnapshot()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            mergeExecutor.execute(() -> merge(sources, snapshots));
+        } catch (RejectedExecutionException e) {
+            lock.writeLock().lock();
+            try {
+                sources.forEach(merging::remove);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void merge(List<Segment> sources, Map<Segment, BitSet> snapshots) {
+        long start = System.currentTimeMillis();
+        try {
+            MemorySegment merged = new MemorySegment();
+            List<Segment> ordered = new ArrayList<>(sources);
+            ordered.sort(Comparator.comparingInt(Segment::maxPageId));
+            for (Segment source : ordered) {
+                copyLivePages(source, snapshots.get(source), merged);
+            }
+            Segment result = null;
+            if (!merged.isEmpty() && !closed) {
+                Path file = newSegmentFile();
+                SegmentWriter.write(file, merged.postings(), merged.pages());
+                result = Segment.open(file);
+            }
+            lock.writeLock().lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                List<Segment> updated = new ArrayList<>(segments);
+                updated.removeAll(sources);
+                if (result != null) {
+                    for (Segment source : sources) {
+                        result.applyDeletions(source, snapshots.get(source));
+                    }
+                    updated.add(result);
+                }
+                segments = List.copyOf(updated);
+                generation++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            synchronized (commitLock) {
+                writeManifest();
+                for (Segment source : sources) {
+                    source.deleteFiles();
+                }
+            }
+            log.info("Слияние {} сегментов индекса {} завершено за {} мс",
+                    sources.size(), directory, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            log.error("Ошибка слияния сегментов индекса {}", directory, e);
+        } finally {
+            lock.writeLock().lock();
+            try {
+                sources.forEach(merging::remove);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        maybeMerge();
+    }
+
+    private static void copyLivePages(Segment source, BitSet deleted, MemorySegment target) {
+        Map<String, Float> none = Map.of();
+        for (int ordinal = 0; ordinal < source.totalPages(); ordinal++) {
+            if (!deleted.get(ordinal)) {
+                target.add(source.pageIdAt(ordinal), source.pageMetaAt(ordinal), none);
+            }
+        }
+        Map<String, PostingList> postings = target.postings();
+        for (int term = 0; term < source.termCount(); term++) {
+            PostingIterator iterator = source.termPostings(term).iterator();
+            PostingList list = null;
+            while (iterator.next() != PostingIterator.NO_MORE_PAGES) {
+                if (!deleted.get(source.ordinal(iterator.page()))) {
+                    if (list == null) {
+                        list = postings.computeIfAbsent(source.term(term), lemma -> new PostingList());
+                    }
+                    list.add(iterator.page(), iterator.rank());
+                }
+            }
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        if (closed) {
+            return;
+        }
+        Properties properties = new Properties();
+        lock.readLock().lock();
+        try {
+            properties.setProperty("version", String.valueOf(SegmentWriter.VERSION));
+            properties.setProperty("nextSegment", String.valueOf(nextSegment.get()));
+            properties.setProperty("committedPageId", String.valueOf(committedPageId));
+            properties.setProperty("segments", String.join(",",
+                    segments.stream().map(segment -> segment.file().getFileName().toString()).toList()));
+        } finally {
+            lock.readLock().unlock();
+        }
+        Path temporary = directory.resolve(MANIFEST + ".tmp");
+        try (OutputStream output = Files.newOutputStream(temporary)) {
+            properties.store(output, null);
+        }
+        Files.move(temporary, directory.resolve(MANIFEST),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path newSegmentFile() {
+        return directory.resolve(SEGMENT_PREFIX + nextSegment.getAndIncrement() + SEGMENT_SUFFIX);
+    }
+
+    private void deleteUnreferencedFiles() throws IOException {
+        Set<Path> referenced = new HashSet<>();
+        for (Segment segment : segments) {
+            referenced.add(segment.file());
+            referenced.add(Segment.deletionsFile(segment.file()));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (segments.isEmpty() && name.equals(MANIFEST)) {
+                    Files.delete(file);
+                } else if (name.startsWith(SEGMENT_PREFIX) && !referenced.contains(file)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static List<Segment> append(List<Segment> segments, Segment segment) {
+        List<Segment> updated = new ArrayList<>(segments);
+        updated.add(segment);
+        return List.copyOf(updated);
+    }
+
+    /**
+     * Число страниц сайта, содержащих лемму. Значения кэшируются до первого изменения индекса.
+     */
+    public int documentFrequency(String lemma) {
+        lock.readLock().lock();
+        try {
+            return cachedDocumentFrequency(lemma);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int cachedDocumentFrequency(String lemma) {
+        if (frequenciesGeneration != generation) {
+            documentFrequencies.clear();
+            frequenciesGeneration = generation;
+        }
+        return documentFrequencies.computeIfAbsent(lemma, this::countDocumentFrequency);
+    }
+
+    private int countDocumentFrequency(String lemma) {
+        int frequency = 0;
+        for (Segment segment : segments) {
+            CompressedPostings postings = segment.postings(lemma);
+            frequency += postings == null ? 0 : postings.size();
+        }
+        for (MemorySegment memory : memorySegments()) {
+            PostingList list = memory.postings(lemma);
+            frequency += list == null ? 0 : list.size();
+        }
+        return frequency;
+    }
+
+    public PageMeta pageMeta(int pageId) {
+        lock.readLock().lock();
+        try {
+            return livePageMeta(pageId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private PageMeta livePageMeta(int pageId) {
+        List<MemorySegment> memory = memorySegments();
+        for (int i = memory.size() - 1; i >= 0; i--) {
+            PageMeta meta = memory.get(i).pageMeta(pageId);
+            if (meta != null) {
+                return meta;
+            }
+        }
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Segment segment = segments.get(i);
+            if (!segment.isDeleted(pageId)) {
+                PageMeta meta = segment.pageMeta(pageId);
+                if (meta != null) {
+                    return meta;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Отбирает в collector лучшие страницы, содержащие все леммы запроса,
+     * по каждому сегменту и буферам. Веса лемм и средняя длина страницы
+     * вычисляются по текущему состоянию индекса сайта. Прерывание потока
+     * (истёк срок запроса) останавливает поиск между сегментами.
+     */
+    public void search(List<String> lemmas, RelevanceScorer relevanceScorer, TopKCollector collector) {
+        if (lemmas.isEmpty()) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            float[] weights = new float[lemmas.size()];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = relevanceScorer.weight(cachedDocumentFrequency(lemmas.get(i)), liveDocs);
+            }
+            float averageLength = liveDocs == 0 || totalLength == 0 ? 1 : (float) totalLength / liveDocs;
+            QueryScorer scorer = new QueryScorer(relevanceScorer, weights, averageLength);
+
+            PostingIterator[] iterators = new PostingIterator[lemmas.size()];
+            for (Segment segment : segments) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                if (segmentIterators(segment, lemmas, iterators)) {
+                    PostingIntersection.topK(iterators, segment::isDeleted, segment::docLength, scorer, collector);
+                }
+            }
+            for (MemorySegment memory : memorySegments()) {
+                if (memoryIterators(memory, lemmas, iterators)) {
+                    PostingIntersection.topK(iterators, memory::isDeleted, memory::docLength, scorer, collector);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<MemorySegment> memorySegments() {
+        List<MemorySegment> memory = new ArrayList<>(flushing);
+        memory.add(buffer);
+        return memory;
+    }
+
+    private boolean segmentIterators(Segment segment, List<String> lemmas, PostingIterator[] iterators) {
+        for (int i = 0; i < iterators.length; i++) {
+            CompressedPostings postings = segment.postings(lemmas.get(i));
+            if (postings == null) {
+                return false;
+            }
+            iterators[i] = postings.iterator();
+        }
+        return true;
+    }
+
+    private boolean memoryIterators(MemorySegment memory, List<String> lemmas, PostingIterator[] iterators) {
+        for (int i = 0; i < iterators.length; i++) {
+            PostingList list = memory.postings(lemmas.get(i));
+            if (list == null) {
+                return false;
+            }
+            iterators[i] = list.iterator();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,52 @@
+package searchengine.services.index;
+
+import searchengine.config.IndexSettings;
+
+import java.util.*;
+
+/**
+ * Ступенчатая политика слияния: сегменты делятся на ступени по числу страниц
+ * (floor, floor * factor, floor * factor^2, ...). Как только на одной ступени набирается
+ * merge-factor сегментов, они сливаются в один сегмент следующей ступени.
+ * Сегменты, где удалено больше merge-deletes-percent страниц, переписываются отдельно.
+ */
+public class TieredMergePolicy {
+    private final IndexSettings settings;
+
+    public TieredMergePolicy(IndexSettings settings) {
+        this.settings = settings;
+    }
+
+    public List<Segment> findMerge(List<Segment> segments) {
+        for (Segment segment : segments) {
+            if (segment.totalPages() > 0 &&
+                    segment.deletedPages() * 100L >= (long) segment.totalPages() * settings.getMergeDeletesPercent()) {
+                return List.of(segment);
+            }
+        }
+
+        Map<Integer, List<Segment>> tiers = new TreeMap<>();
+        for (Segment segment : segments) {
+            if (segment.pageCount() < settings.getMaxSegmentPages()) {
+                tiers.computeIfAbsent(tier(segment.pageCount()), tier -> new ArrayList<>()).add(segment);
+            }
+        }
+        for (List<Segment> tier : tiers.values()) {
+            if (tier.size() >= settings.getMergeFactor()) {
+                tier.sort(Comparator.comparingInt(Segment::pageCount));
+                return List.copyOf(tier.subList(0, settings.getMergeFactor()));
+            }
+        }
+        return List.of();
+    }
+
+    private int tier(int pages) {
+        int floor = Math.max(settings.getFloorSegmentPages(), 1);
+        int factor = Math.max(settings.getMergeFactor(), 2);
+        int tier = 0;
+        for (long bound = floor; pages > bound; bound *= factor) {
+            tier++;
+        }
+        return tier;
+    }
+}
@@ -0,0 +1,174 @@
+package searchengine.services.index;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Отбор K лучших страниц: min-куча ограниченного размера на примитивных массивах.
+ * В корне кучи худший из отобранных результатов, он задаёт порог для досрочного отсечения.
+ * При равной релевантности выше стоит страница с меньшим идентификатором.
+ * Отсечение разрешается только после того, как точно подсчитано totalHitsThreshold совпадений,
+ * дальше {@link #totalHits()} становится нижней оценкой.
+ */
+public class TopKCollector {
+    private final int k;
+    private final int totalHitsThreshold;
+    private final int[] pages;
+    private final float[] scores;
+    private int size;
+    private int totalHits;
+    private boolean totalHitsExact = true;
+    private boolean searchAfter;
+    private float afterScore;
+    private int afterPage;
+
+    public TopKCollector(int k, int totalHitsThreshold) {
+        this.k = Math.max(k, 1);
+        this.totalHitsThreshold = totalHitsThreshold;
+        this.pages = new int[this.k];
+        this.scores = new float[this.k];
+    }
+
+    /**
+     * Отбирать только страницы, стоящие в выдаче строго после заданной (продолжение по курсору).
+     * Общее число совпадений по-прежнему считается по всему результату.
+     */
+    public void searchAfter(float score, int page) {
+        searchAfter = true;
+        afterScore = score;
+        afterPage = page;
+    }
+
+    public void collect(int page, float score) {
+        totalHits++;
+        if (searchAfter && !better(afterScore, afterPage, score, page)) {
+            return;
+        }
+        if (size < k) {
+            pages[size] = page;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (better(score, page, scores[0], pages[0])) {
+            pages[0] = page;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Можно ли пропускать страницы, не подсчитывая их.
+     */
+    public boolean canSkip() {
+        return size == k && totalHits >= totalHitsThreshold;
+    }
+
+    /**
+     * Может ли страница не меньше firstPage с релевантностью не выше bound попасть в результат.
+     */
+    public boolean isCompetitive(float bound, int firstPage) {
+        return size < k || bound > scores[0] || (bound == scores[0] && firstPage < pages[0]);
+    }
+
+    /**
+     * Отмечает, что часть совпадений была пропущена без подсчёта.
+     */
+    public void skipped() {
+        totalHitsExact = false;
+    }
+
+    /**
+     * Добавляет результаты другого сборщика (например, по другому сайту).
+     */
+    public void addAll(TopKCollector other) {
+        for (int i = 0; i < other.size; i++) {
+            int page = other.pages[i];
+            float score = other.scores[i];
+            if (size < k) {
+                pages[size] = page;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (better(score, page, scores[0], pages[0])) {
+                pages[0] = page;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+        totalHits += other.totalHits;
+        totalHitsExact &= other.totalHitsExact;
+    }
+
+    public int totalHits() {
+        return totalHits;
+    }
+
+    public boolean isTotalHitsExact() {
+        return totalHitsExact;
+    }
+
+    /**
+     * Отобранные страницы в порядке убывания релевантности.
+     */
+    public LinkedHashMap<Integer, Float> topPages() {
+        int[] sortedPages = new int[size];
+        float[] sortedScores = new float[size];
+        int[] heapPages = pages.clone();
+        float[] heapScores = scores.clone();
+        int heapSize = size;
+        for (int i = size - 1; i >= 0; i--) {
+            sortedPages[i] = heapPages[0];
+            sortedScores[i] = heapScores[0];
+            heapSize--;
+            heapPages[0] = heapPages[heapSize];
+            heapScores[0] = heapScores[heapSize];
+            siftDown(heapPages, heapScores, heapSize, 0);
+        }
+        LinkedHashMap<Integer, Float> result = new LinkedHashMap<>();
+        for (int i = 0; i < sortedPages.length; i++) {
+            result.put(sortedPages[i], sortedScores[i]);
+        }
+        return result;
+    }
+
+    private static boolean better(float score, int page, float otherScore, int otherPage) {
+        return score > otherScore || (score == otherScore && page < otherPage);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!better(scores[parent], pages[parent], scores[index], pages[index])) {
+                break;
+            }
+            swap(pages, scores, parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        siftDown(pages, scores, size, index);
+    }
+
+    private static void siftDown(int[] pages, float[] scores, int size, int index) {
+        while (true) {
+            int worst = index;
+            for (int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+                if (better(scores[worst], pages[worst], scores[child], pages[child])) {
+                    worst = child;
+                }
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(pages, scores, worst, index);
+            index = worst;
+        }
+    }
+
+    private static void swap(int[] pages, float[] scores, int i, int j) {
+        int page = pages[i];
+        pages[i] = pages[j];
+        pages[j] = page;
+        float score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+}
@@ -0,0 +1,171 @@
+package searchengine.services.parsing;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Контрольная точка обхода сайта: журнал, в который дописываются адреса, поставленные в очередь
+ * (запись Q: глубина и адрес), и адреса, обработка которых завершена (запись D). Журнал сбрасывается
+ * на диск не реже crawler-settings.checkpoint-interval. При открытии журнал прошлого обхода
+ * перечитывается (оборванная последняя запись отбрасывается) и переписывается в сжатом виде:
+ * обработанные адреса и очередь, с которой обход продолжается.
+ */
+@Slf4j
+public class CrawlCheckpoint implements Closeable {
+    private static final byte QUEUED = 'Q';
+    private static final byte DONE = 'D';
+
+    private final Path file;
+    private final long flushInterval;
+    private final Map<String, Integer> pending = new LinkedHashMap<>();
+    private final List<String> completed = new ArrayList<>();
+    private DataOutputStream out;
+    private long lastFlush = System.nanoTime();
+
+    private CrawlCheckpoint(Path file, long flushInterval) {
+        this.file = file;
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Открывает журнал сайта. Если resume = false или журнала нет, обход начинается заново.
+     */
+    public static CrawlCheckpoint open(Path file, boolean resume, long flushIntervalMillis) throws IOException {
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(file, TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis));
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        if (resume && Files.exists(file)) {
+            checkpoint.replay();
+        }
+        checkpoint.compact();
+        return checkpoint;
+    }
+
+    public static boolean exists(Path file) {
+        return Files.exists(file);
+    }
+
+    /**
+     * Адреса, поставленные в очередь прошлым обходом и не обработанные: адрес -> глубина.
+     */
+    public Map<String, Integer> getPending() {
+        return pending;
+    }
+
+    /**
+     * Адреса, обработанные прошлым обходом.
+     */
+    public List<String> getCompleted() {
+        return completed;
+    }
+
+    public synchronized void queued(String url, int depth) {
+        append(QUEUED, url, depth);
+    }
+
+    public synchronized void done(String url) {
+        append(DONE, url, 0);
+    }
+
+    public synchronized void flush() {
+        try {
+            out.flush();
+            lastFlush = System.nanoTime();
+        } catch (IOException e) {
+            log.warn("Контрольная точка {} не сохранена: {}", file, e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.warn("Контрольная точка {} не закрыта: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Закрывает и удаляет журнал после завершённого обхода.
+     */
+    public synchronized void delete() {
+        close();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Контрольная точка {} не удалена: {}", file, e.getMessage());
+        }
+    }
+
+    private void append(byte type, String url, int depth) {
+        try {
+            out.writeByte(type);
+            if (type == QUEUED) {
+                out.writeShort(depth);
+            }
+            out.writeUTF(url);
+            if (System.nanoTime() - lastFlush >= flushInterval) {
+                out.flush();
+                lastFlush = System.nanoTime();
+            }
+        } catch (IOException e) {
+            log.warn("Контрольная точка {} не записана: {}", file, e.getMessage());
+        }
+    }
+
+    private void replay() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                if (type == QUEUED) {
+                    int depth = in.readShort();
+                    pending.put(in.readUTF(), depth);
+                } else if (type == DONE) {
+                    String url = in.readUTF();
+                    if (pending.remove(url) != null) {
+                        completed.add(url);
+                    }
+                } else {
+                    log.warn("Контрольная точка {} повреждена, прочитано до записи типа {}", file, type);
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            log.info("Контрольная точка {}: последняя запись оборвана и отброшена", file);
+        }
+    }
+
+    private void compact() throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream compacted = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            for (String url : completed) {
+                compacted.writeByte(QUEUED);
+                compacted.writeShort(0);
+                compacted.writeUTF(url);
+                compacted.writeByte(DONE);
+                compacted.writeUTF(url);
+            }
+            for (Map.Entry<String, Integer> entry : pending.entrySet()) {
+                compacted.writeByte(QUEUED);
+                compacted.writeShort(entry.getValue());
+                compacted.writeUTF(entry.getKey());
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.APPEND)));
+    }
+}
@@ -0,0 +1,27 @@
+package searchengine.services.parsing;
+
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Результат извлечения текста из HTML: заголовок, видимый текст, ссылки и meta-теги страницы.
+ */
+@Getter
+public class ExtractedPage {
+    private final String title;
+    private final String text;
+    private final List<String> links;
+    /**
+     * Содержимое meta-тегов по name или property в нижнем регистре.
+     */
+    private final Map<String, String> meta;
+
+    public ExtractedPage(String title, String text, List<String> links, Map<String, String> meta) {
+        this.title = title;
+        this.text = text;
+        this.links = links;
+        this.meta = meta;
+    }
+}
@@ -0,0 +1,103 @@
+package searchengine.services.parsing;
+
+import lombok.Getter;
+
+import java.net.http.HttpHeaders;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * Ответ сервера на запрос страницы: код, заголовки и распакованное тело.
+ */
+@Getter
+public class FetchedPage {
+    private static final int SNIFF_LENGTH = 2048;
+
+    private final String url;
+    /**
+     * Адрес, с которого получен ответ после перенаправлений; от него разрешаются относительные ссылки.
+     */
+    private final String baseUrl;
+    private final int code;
+    private final HttpHeaders headers;
+    private final byte[] body;
+
+    public FetchedPage(String url, String baseUrl, int code, HttpHeaders headers, byte[] body) {
+        this.url = url;
+        this.baseUrl = baseUrl;
+        this.code = code;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    public boolean isError() {
+        return code >= 400;
+    }
+
+    /**
+     * Страница удалена с сайта (404 или 410); остальные ошибки считаются временными.
+     */
+    public boolean isGone() {
+        return code == 404 || code == 410;
+    }
+
+    public boolean isNotModified() {
+        return code == 304;
+    }
+
+    public String getEtag() {
+        return headers.firstValue("ETag").orElse(null);
+    }
+
+    public String getLastModified() {
+        return headers.firstValue("Last-Modified").orElse(null);
+    }
+
+    /**
+     * SHA-256 тела ответа в шестнадцатеричном виде.
+     */
+    public String contentHash() {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Декодирует тело. Кодировка берётся из Content-Type, иначе из meta-тега в начале документа,
+     * иначе используется UTF-8.
+     */
+    public String html() {
+        Charset charset = charset(headers.firstValue("Content-Type").orElse(""));
+        if (charset == null) {
+            String head = new String(body, 0, Math.min(body.length, SNIFF_LENGTH), StandardCharsets.ISO_8859_1);
+            charset = charset(head);
+        }
+        return new String(body, charset == null ? StandardCharsets.UTF_8 : charset);
+    }
+
+    private static Charset charset(String text) {
+        int index = text.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (index < 0) {
+            return null;
+        }
+        int start = index + "charset=".length();
+        while (start < text.length() && (text.charAt(start) == '"' || text.charAt(start) == '\'')) {
+            start++;
+        }
+        int end = start;
+        while (end < text.length() && (Character.isLetterOrDigit(text.charAt(end)) || "-_:.".indexOf(text.charAt(end)) >= 0)) {
+            end++;
+        }
+        try {
+            return Charset.forName(text.substring(start, end));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package searchengine.services.parsing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Множество 64-битных отпечатков без блокировок: открытая адресация с линейным пробированием
+ * по {@link AtomicLongArray}, слот занимается через compareAndSet. Ёмкость фиксирована и вдвое
+ * превышает предельный размер, поэтому таблица не перестраивается.
+ */
+final class FingerprintSet {
+    private static final long EMPTY = 0;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final int maxSize;
+    private final AtomicInteger size = new AtomicInteger();
+
+    FingerprintSet(int maxSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, maxSize) * 2 - 1) << 1;
+        this.slots = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return true, если отпечаток добавлен; false, если он уже был или множество заполнено
+     */
+    boolean add(long fingerprint) {
+        if (fingerprint == EMPTY) {
+            fingerprint = 1;
+        }
+        int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+        while (true) {
+            long current = slots.get(slot);
+            if (current == fingerprint) {
+                return false;
+            }
+            if (current == EMPTY) {
+                if (size.get() >= maxSize) {
+                    return false;
+                }
+                if (slots.compareAndSet(slot, EMPTY, fingerprint)) {
+                    size.incrementAndGet();
+                    return true;
+                }
+                continue;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    boolean contains(long fingerprint) {
+        if (fingerprint == EMPTY) {
+            fingerprint = 1;
+        }
+        int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+        while (true) {
+            long current = slots.get(slot);
+            if (current == fingerprint) {
+                return true;
+            }
+            if (current == EMPTY) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    int size() {
+        return size.get();
+    }
+}
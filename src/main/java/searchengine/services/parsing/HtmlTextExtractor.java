@@ -0,0 +1,332 @@
+package searchengine.services.parsing;
+
+import java.net.URI;
+import java.util.*;
+
+/**
+ * Однопроходное извлечение текста из HTML без построения DOM. Сканер идёт по символам,
+ * пропускает комментарии и содержимое script, style, noscript, template и svg, раскрывает
+ * сущности и схлопывает пробелы; попутно собираются заголовок, абсолютные адреса ссылок
+ * и meta-теги. Память, кроме результата, не зависит от размера страницы.
+ */
+public final class HtmlTextExtractor {
+    private static final int MAX_TITLE_LENGTH = 1024;
+    private static final Set<String> SKIPPED = Set.of("script", "style", "noscript", "template", "svg");
+    private static final Set<String> BLOCKS = Set.of("address", "article", "aside", "blockquote", "br",
+            "dd", "div", "dl", "dt", "fieldset", "figcaption", "figure", "footer", "form", "h1", "h2", "h3",
+            "h4", "h5", "h6", "header", "hr", "li", "main", "nav", "ol", "option", "p", "pre", "section",
+            "table", "td", "th", "tr", "ul");
+    private static final Map<String, Character> ENTITIES = Map.ofEntries(
+            Map.entry("amp", '&'), Map.entry("lt", '<'), Map.entry("gt", '>'), Map.entry("quot", '"'),
+            Map.entry("apos", '\''), Map.entry("nbsp", ' '), Map.entry("laquo", '«'), Map.entry("raquo", '»'),
+            Map.entry("mdash", '—'), Map.entry("ndash", '–'), Map.entry("hellip", '…'), Map.entry("copy", '©'),
+            Map.entry("shy", '\u00ad'));
+
+    private final String html;
+    private final int length;
+    private URI base;
+    private final StringBuilder text = new StringBuilder();
+    private final List<String> links = new ArrayList<>();
+    private final Map<String, String> meta = new HashMap<>();
+    private String title = "";
+    private int position;
+
+    private HtmlTextExtractor(String html, String baseUrl) {
+        this.html = html;
+        this.length = html.length();
+        try {
+            this.base = baseUrl == null ? null : new URI(baseUrl);
+        } catch (Exception e) {
+            this.base = null;
+        }
+    }
+
+    public static ExtractedPage extract(String html, String baseUrl) {
+        HtmlTextExtractor extractor = new HtmlTextExtractor(html, baseUrl);
+        extractor.scan();
+        int end = extractor.text.length();
+        if (end > 0 && extractor.text.charAt(end - 1) == ' ') {
+            extractor.text.setLength(end - 1);
+        }
+        return new ExtractedPage(extractor.title, extractor.text.toString(), extractor.links, extractor.meta);
+    }
+
+    private void scan() {
+        while (position < length) {
+            char c = html.charAt(position);
+            if (c == '<') {
+                tag();
+            } else if (c == '&') {
+                appendChar(entity());
+            } else {
+                appendChar(c);
+                position++;
+            }
+        }
+    }
+
+    private void tag() {
+        if (html.startsWith("<!--", position)) {
+            int end = html.indexOf("-->", position + 4);
+            position = end < 0 ? length : end + 3;
+            return;
+        }
+        int nameStart = position + 1;
+        boolean closing = nameStart < length && html.charAt(nameStart) == '/';
+        if (closing) {
+            nameStart++;
+        }
+        int nameEnd = nameStart;
+        while (nameEnd < length && isNameChar(html.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        if (nameEnd == nameStart) {
+            if (nameStart < length && (html.charAt(nameStart) == '!' || html.charAt(nameStart) == '?')) {
+                int end = html.indexOf('>', nameStart);
+                position = end < 0 ? length : end + 1;
+            } else {
+                appendChar('<');
+                position++;
+            }
+            return;
+        }
+        String name = html.substring(nameStart, nameEnd).toLowerCase(Locale.ROOT);
+        position = nameEnd;
+        Map<String, String> attributes = closing ? Map.of() : attributes(name);
+        skipToTagEnd();
+        if (BLOCKS.contains(name)) {
+            appendChar(' ');
+        }
+        if (closing) {
+            return;
+        }
+        switch (name) {
+            case "a" -> link(attributes.get("href"));
+            case "base" -> base(attributes.get("href"));
+            case "meta" -> meta(attributes);
+            case "title" -> {
+                int start = position;
+                int end = closingTag("title");
+                title = collapse(decode(html.substring(start, end)));
+                if (title.length() > MAX_TITLE_LENGTH) {
+                    title = title.substring(0, MAX_TITLE_LENGTH);
+                }
+                appendChar(' ');
+                text.append(title);
+                appendChar(' ');
+            }
+            default -> {
+                if (SKIPPED.contains(name)) {
+                    closingTag(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Читает атрибуты только у тегов, из которых они нужны; у остальных атрибуты пропускаются.
+     */
+    private Map<String, String> attributes(String name) {
+        boolean needed = name.equals("a") || name.equals("meta") || name.equals("base");
+        Map<String, String> attributes = needed ? new HashMap<>() : Map.of();
+        while (position < length) {
+            char c = html.charAt(position);
+            if (c == '>' || c == '/' && position + 1 < length && html.charAt(position + 1) == '>') {
+                return attributes;
+            }
+            if (Character.isWhitespace(c) || c == '/') {
+                position++;
+                continue;
+            }
+            int keyStart = position;
+            while (position < length && !Character.isWhitespace(html.charAt(position))
+                    && "=>/".indexOf(html.charAt(position)) < 0) {
+                position++;
+            }
+            String key = html.substring(keyStart, position);
+            while (position < length && Character.isWhitespace(html.charAt(position))) {
+                position++;
+            }
+            String value = "";
+            if (position < length && html.charAt(position) == '=') {
+                position++;
+                while (position < length && Character.isWhitespace(html.charAt(position))) {
+                    position++;
+                }
+                value = attributeValue();
+            }
+            if (needed) {
+                attributes.putIfAbsent(key.toLowerCase(Locale.ROOT), decode(value));
+            }
+        }
+        return attributes;
+    }
+
+    private String attributeValue() {
+        if (position >= length) {
+            return "";
+        }
+        char quote = html.charAt(position);
+        if (quote == '"' || quote == '\'') {
+            int end = html.indexOf(quote, position + 1);
+            end = end < 0 ? length : end;
+            String value = html.substring(position + 1, end);
+            position = Math.min(length, end + 1);
+            return value;
+        }
+        int start = position;
+        while (position < length && !Character.isWhitespace(html.charAt(position)) && html.charAt(position) != '>') {
+            position++;
+        }
+        return html.substring(start, position);
+    }
+
+    private void skipToTagEnd() {
+        int end = html.indexOf('>', position);
+        position = end < 0 ? length : end + 1;
+    }
+
+    /**
+     * Переходит за закрывающий тег name без учёта регистра.
+     *
+     * @return позиция начала закрывающего тега (или конец документа)
+     */
+    private int closingTag(String name) {
+        int from = position;
+        while (true) {
+            int end = html.indexOf("</", from);
+            if (end < 0) {
+                position = length;
+                return length;
+            }
+            if (html.regionMatches(true, end + 2, name, 0, name.length())
+                    && (end + 2 + name.length() >= length || !isNameChar(html.charAt(end + 2 + name.length())))) {
+                position = end + 2 + name.length();
+                skipToTagEnd();
+                return end;
+            }
+            from = end + 2;
+        }
+    }
+
+    private char entity() {
+        int end = position + 1;
+        while (end < length && end - position <= 10 && html.charAt(end) != ';'
+                && (Character.isLetterOrDigit(html.charAt(end)) || html.charAt(end) == '#')) {
+            end++;
+        }
+        if (end >= length || html.charAt(end) != ';' || end == position + 1) {
+            position++;
+            return '&';
+        }
+        String name = html.substring(position + 1, end);
+        Character decoded = null;
+        if (name.charAt(0) == '#') {
+            try {
+                int code = name.length() > 1 && (name.charAt(1) == 'x' || name.charAt(1) == 'X')
+                        ? Integer.parseInt(name.substring(2), 16)
+                        : Integer.parseInt(name.substring(1));
+                decoded = code > 0 && code < Character.MIN_SUPPLEMENTARY_CODE_POINT ? (char) code : ' ';
+            } catch (NumberFormatException e) {
+                decoded = null;
+            }
+        } else {
+            decoded = ENTITIES.get(name);
+        }
+        if (decoded == null) {
+            position++;
+            return '&';
+        }
+        position = end + 1;
+        return decoded;
+    }
+
+    private static String decode(String value) {
+        if (value.indexOf('&') < 0) {
+            return value;
+        }
+        HtmlTextExtractor extractor = new HtmlTextExtractor(value, null);
+        StringBuilder decoded = new StringBuilder(value.length());
+        while (extractor.position < extractor.length) {
+            char c = value.charAt(extractor.position);
+            if (c == '&') {
+                decoded.append(extractor.entity());
+            } else {
+                decoded.append(c);
+                extractor.position++;
+            }
+        }
+        return decoded.toString();
+    }
+
+    private static String collapse(String value) {
+        StringBuilder collapsed = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                if (collapsed.length() > 0 && collapsed.charAt(collapsed.length() - 1) != ' ') {
+                    collapsed.append(' ');
+                }
+            } else {
+                collapsed.append(c);
+            }
+        }
+        int end = collapsed.length();
+        return end > 0 && collapsed.charAt(end - 1) == ' ' ? collapsed.substring(0, end - 1) : collapsed.toString();
+    }
+
+    private void appendChar(char c) {
+        if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+            int end = text.length();
+            if (end > 0 && text.charAt(end - 1) != ' ') {
+                text.append(' ');
+            }
+        } else if (c != '\u00ad') {
+            text.append(c);
+        }
+    }
+
+    private void link(String href) {
+        if (href == null || href.isBlank()) {
+            return;
+        }
+        String trimmed = href.trim();
+        String lower = trimmed.toLowerCase(Locale.ROOT);
+        if (lower.startsWith("javascript:") || lower.startsWith("mailto:") || lower.startsWith("tel:")) {
+            return;
+        }
+        try {
+            URI uri = base == null ? new URI(trimmed) : base.resolve(new URI(trimmed));
+            if (uri.isAbsolute()) {
+                links.add(uri.toString());
+            }
+        } catch (Exception e) {
+            // ссылка с недопустимыми символами пропускается, как и в jsoup abs:href
+        }
+    }
+
+    private void base(String href) {
+        if (href == null || href.isBlank()) {
+            return;
+        }
+        try {
+            base = base == null ? new URI(href.trim()) : base.resolve(new URI(href.trim()));
+        } catch (Exception e) {
+            // некорректный base не меняет адрес страницы
+        }
+    }
+
+    private void meta(Map<String, String> attributes) {
+        String key = attributes.getOrDefault("name", attributes.get("property"));
+        if (key != null && attributes.containsKey("content")) {
+            meta.putIfAbsent(key.toLowerCase(Locale.ROOT), attributes.get("content"));
+        }
+        if (attributes.containsKey("charset")) {
+            meta.putIfAbsent("charset", attributes.get("charset"));
+        }
+    }
+
+    private static boolean isNameChar(char c) {
+        return c < 128 && (Character.isLetterOrDigit(c) || c == '-' || c == ':');
+    }
+}
@@ -0,0 +1,25 @@
+package searchengine.services.parsing;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Запуск индексации набора сайтов; сайты индексируются одновременно и независимо.
+ */
+@Getter
+public class IndexingJob {
+    private final long id;
+    private final LocalDateTime startTime = LocalDateTime.now();
+    private final List<SiteIndexingJob> sites;
+
+    IndexingJob(long id, List<SiteIndexingJob> sites) {
+        this.id = id;
+        this.sites = sites;
+    }
+
+    public boolean isDone() {
+        return sites.stream().allMatch(SiteIndexingJob::isDone);
+    }
+}
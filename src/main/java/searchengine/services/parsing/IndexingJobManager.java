@@ -0,0 +1,261 @@
+package searchengine.services.parsing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+import searchengine.config.Site;
+import searchengine.config.SitesList;
+import searchengine.model.entities.SiteEntity;
+import searchengine.model.entities.Status;
+import searchengine.model.repositories.PageRepository;
+import searchengine.model.repositories.SiteRepository;
+import searchengine.services.index.InvertedIndex;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Запуск и учёт заданий индексации. Каждый сайт индексируется в своём пуле, одновременно с остальными;
+ * запуск возвращает идентификатор задания сразу, не дожидаясь обхода. Сайт, который уже индексируется,
+ * повторно не запускается. Обход, прерванный остановкой или перезапуском приложения, оставляет сайт
+ * в статусе RESUMABLE и продолжается с контрольной точки. Завершённые задания хранятся,
+ * пока их не больше {@value #MAX_FINISHED_JOBS}; более старые забываются.
+ */
+@Slf4j
+@Component
+public class IndexingJobManager {
+    static final int MAX_FINISHED_JOBS = 100;
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final InvertedIndex invertedIndex;
+    private final PageWritePipeline writePipeline;
+    private final PolitenessScheduler politeness;
+    private final PageFetcher fetcher;
+    private final Lemmatisation lemmatisation;
+    private final CrawlerSettings settings;
+    private final SitesList sites;
+    private final AtomicLong jobIds = new AtomicLong();
+    private final Map<Long, IndexingJob> jobs = new ConcurrentHashMap<>();
+    private final Deque<Long> finishedJobs = new ArrayDeque<>();
+    /**
+     * Задания сайтов, которые сейчас индексируются, по нормализованному адресу сайта.
+     */
+    private final Map<String, SiteIndexingJob> running = new ConcurrentHashMap<>();
+
+    public IndexingJobManager(SiteRepository siteRepository,
+                              PageRepository pageRepository,
+                              InvertedIndex invertedIndex,
+                              PageWritePipeline writePipeline,
+                              PolitenessScheduler politeness,
+                              PageFetcher fetcher,
+                              Lemmatisation lemmatisation,
+                              CrawlerSettings settings,
+                              SitesList sites) {
+        this.siteRepository = siteRepository;
+        this.pageRepository = pageRepository;
+        this.invertedIndex = invertedIndex;
+        this.writePipeline = writePipeline;
+        this.politeness = politeness;
+        this.fetcher = fetcher;
+        this.lemmatisation = lemmatisation;
+        this.settings = settings;
+        this.sites = sites;
+    }
+
+    /**
+     * После запуска приложения отмечает прерванные обходы как RESUMABLE и, если включено
+     * crawler-settings.resume-on-startup, продолжает их. Выполняется после загрузки инвертированного индекса
+     * и статистики лемм.
+     */
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterrupted() {
+        List<Site> resumable = new ArrayList<>();
+        for (SiteEntity siteEntity : siteRepository.findAll()) {
+            if (siteEntity.getStatus() != Status.INDEXING && siteEntity.getStatus() != Status.RESUMABLE) {
+                continue;
+            }
+            boolean hasCheckpoint = CrawlCheckpoint.exists(checkpointFile(siteEntity));
+            if (siteEntity.getStatus() == Status.INDEXING) {
+                siteEntity.setStatus(hasCheckpoint ? Status.RESUMABLE : Status.FAILED);
+                siteEntity.setStatusTime(LocalDateTime.now());
+                siteEntity.setLastError("Индексация прервана перезапуском приложения");
+                siteRepository.save(siteEntity);
+            }
+            if (hasCheckpoint) {
+                sites.getSites().stream()
+                        .filter(site -> siteKey(site.getUrl()).equals(siteKey(siteEntity.getUrl())))
+                        .findFirst()
+                        .ifPresent(resumable::add);
+            }
+        }
+        if (settings.isResumeOnStartup() && !resumable.isEmpty()) {
+            log.info("Продолжение прерванной индексации сайтов: {}", resumable.size());
+            start(resumable, true);
+        }
+    }
+
+    /**
+     * Запускает индексацию сайтов, которые сейчас не индексируются.
+     *
+     * @param resume продолжить обход с контрольной точки, если она есть
+     * @return задание или null, если все сайты уже индексируются
+     */
+    public synchronized IndexingJob start(List<Site> sites, boolean resume) {
+        List<SiteIndexingJob> started = new ArrayList<>();
+        for (Site site : sites) {
+            String key = siteKey(site.getUrl());
+            if (running.containsKey(key)) {
+                continue;
+            }
+            SiteIndexingJob siteJob = new SiteIndexingJob(site, this, Math.max(1, settings.getSiteThreads()), resume);
+            running.put(key, siteJob);
+            siteJob.getCompletion().thenRun(() -> running.remove(key, siteJob));
+            started.add(siteJob);
+        }
+        if (started.isEmpty()) {
+            return null;
+        }
+        IndexingJob job = new IndexingJob(jobIds.incrementAndGet(), started);
+        jobs.put(job.getId(), job);
+        CompletableFuture.allOf(started.stream().map(SiteIndexingJob::getCompletion).toArray(CompletableFuture[]::new))
+                .thenRun(() -> retire(job));
+        started.forEach(SiteIndexingJob::start);
+        return job;
+    }
+
+    /**
+     * Индексация всех сайтов с нуля: если ни один сайт не индексируется, под той же блокировкой,
+     * что и запуск заданий, выполняет reset (очистку таблиц и индекса) и запускает задание.
+     * Поэтому очистка не может совпасть с обходом, запущенным другим запросом или продолженным при старте.
+     *
+     * @return задание или null, если индексация уже идёт
+     */
+    public synchronized IndexingJob startFromScratch(List<Site> sites, Runnable reset) {
+        if (isRunning()) {
+            return null;
+        }
+        reset.run();
+        return start(sites, false);
+    }
+
+    public boolean isRunning() {
+        return !running.isEmpty();
+    }
+
+    public boolean isRunning(String siteUrl) {
+        return running.containsKey(siteKey(siteUrl));
+    }
+
+    /**
+     * Останавливает индексацию сайта или, если siteUrl не задан, всех сайтов.
+     *
+     * @return число остановленных сайтов
+     */
+    public int cancel(String siteUrl) {
+        if (siteUrl != null) {
+            SiteIndexingJob siteJob = running.get(siteKey(siteUrl));
+            if (siteJob == null) {
+                return 0;
+            }
+            siteJob.cancel();
+            return 1;
+        }
+        int cancelled = 0;
+        for (SiteIndexingJob siteJob : running.values()) {
+            siteJob.cancel();
+            cancelled++;
+        }
+        return cancelled;
+    }
+
+    public IndexingJob getJob(long id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Переносит завершённое задание в историю, вытесняя самые старые.
+     */
+    private synchronized void retire(IndexingJob job) {
+        finishedJobs.addLast(job.getId());
+        while (finishedJobs.size() > MAX_FINISHED_JOBS) {
+            jobs.remove(finishedJobs.removeFirst());
+        }
+    }
+
+    /**
+     * Адрес сайта, по которому он учитывается среди запущенных: без завершающей косой черты,
+     * без стандартного порта, в нижнем регистре.
+     */
+    private static String siteKey(String url) {
+        return UrlFrontier.normalize(url).toLowerCase(Locale.ROOT);
+    }
+
+    SiteEntity prepareSite(Site site) {
+        SiteEntity siteEntity = siteRepository.findSiteEntityByUrlIsIgnoreCase(site.getUrl());
+        if (siteEntity == null) {
+            siteEntity = new SiteEntity();
+            siteEntity.setUrl(site.getUrl());
+        }
+        siteEntity.setName(site.getName());
+        siteEntity.setStatus(Status.INDEXING);
+        siteEntity.setStatusTime(LocalDateTime.now());
+        siteEntity.setLastError(null);
+        return siteRepository.save(siteEntity);
+    }
+
+    CrawlCheckpoint openCheckpoint(SiteEntity siteEntity, boolean resume) throws IOException {
+        return CrawlCheckpoint.open(checkpointFile(siteEntity), resume,
+                settings.getCheckpointInterval().toMillis());
+    }
+
+    SiteParser createParser(Site site, SiteEntity siteEntity, CrawlCheckpoint checkpoint) {
+        KnownPages knownPages = KnownPages.load(siteEntity.getSiteID(), pageRepository);
+        if (knownPages.size() > 0) {
+            log.info("Повторный обход {}, сохранено страниц: {}", site.getUrl(), knownPages.size());
+        }
+        UrlFrontier frontier = new UrlFrontier(site.getUrl(), settings);
+        frontier.restore(checkpoint);
+        if (checkpoint.getCompleted().isEmpty() && checkpoint.getPending().isEmpty()) {
+            frontier.offer(site.getUrl(), 0);
+        } else {
+            log.info("Обход {} продолжен с контрольной точки: обработано {}, в очереди {}", site.getUrl(),
+                    checkpoint.getCompleted().size(), checkpoint.getPending().size());
+            checkpoint.getCompleted().forEach(knownPages::take);
+        }
+        politeness.register(site.getUrl(), site.getRequestRate());
+        return new SiteParser(frontier, knownPages, checkpoint, siteEntity, writePipeline, politeness, fetcher,
+                lemmatisation, settings.isStorePositions());
+    }
+
+    private Path checkpointFile(SiteEntity siteEntity) {
+        return Path.of(settings.getCheckpointPath(), "site-" + siteEntity.getSiteID() + ".checkpoint");
+    }
+
+    /**
+     * Дожидается записи всех страниц сайта и фиксирует его индекс.
+     */
+    void flush(SiteEntity siteEntity) throws InterruptedException {
+        writePipeline.flush();
+        invertedIndex.commit(siteEntity.getSiteID());
+        log.info("Лемматизация {}: {}", siteEntity.getUrl(), lemmatisation.getCacheStats());
+    }
+
+    void saveSite(SiteEntity siteEntity) {
+        siteRepository.save(siteEntity);
+    }
+}
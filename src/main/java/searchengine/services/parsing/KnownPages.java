@@ -0,0 +1,48 @@
+package searchengine.services.parsing;
+
+import searchengine.model.repositories.PageRepository;
+import searchengine.model.repositories.PageValidatorsView;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Страницы сайта, сохранённые прошлым обходом, с их ETag, Last-Modified и хешем содержимого.
+ * Обход забирает страницу при её загрузке; оставшиеся после обхода страницы на сайте больше не найдены.
+ */
+public class KnownPages {
+    private final PageRepository pageRepository;
+    private final Map<String, PageValidatorsView> pages = new ConcurrentHashMap<>();
+
+    public KnownPages(PageRepository pageRepository) {
+        this.pageRepository = pageRepository;
+    }
+
+    public static KnownPages load(int siteId, PageRepository pageRepository) {
+        KnownPages knownPages = new KnownPages(pageRepository);
+        for (PageValidatorsView page : pageRepository.findValidatorsBySiteId(siteId)) {
+            knownPages.pages.put(UrlFrontier.normalize(page.getPagePath()), page);
+        }
+        return knownPages;
+    }
+
+    /**
+     * @return сохранённая версия страницы или null, если страница новая
+     */
+    public PageValidatorsView take(String url) {
+        return pages.isEmpty() ? null : pages.remove(UrlFrontier.normalize(url));
+    }
+
+    public String content(int pageId) {
+        return pageRepository.findContentByPageId(pageId);
+    }
+
+    public Collection<PageValidatorsView> remaining() {
+        return pages.values();
+    }
+
+    public int size() {
+        return pages.size();
+    }
+}
@@ -0,0 +1,159 @@
+package searchengine.services.parsing;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Подсчёт лемм текста. Словоформы хранятся в таблице с открытой адресацией, ключ которой -
+ * символы слова: для уже встречавшейся формы не создаются строки и не вызывается морфология,
+ * счётчик лемм - массив int по номеру леммы. По требованию запоминаются и позиции вхождений лемм
+ * ({@link TokenPositions}).
+ */
+final class LemmaCounter {
+    private static final int NO_LEMMA = -1;
+
+    private final Function<String, String> lemmatizer;
+    private char[][] forms = new char[64][];
+    private int[] formLemmas = new int[64];
+    private int formCount;
+    private final Map<String, Integer> lemmaIds = new HashMap<>();
+    private String[] lemmas = new String[32];
+    private int[] counts = new int[32];
+    private TokenPositions.Writer[] positions;
+
+    /**
+     * @param lemmatizer нормальная форма слова или null, если слово не учитывается
+     */
+    LemmaCounter(Function<String, String> lemmatizer) {
+        this(lemmatizer, false);
+    }
+
+    LemmaCounter(Function<String, String> lemmatizer, boolean withPositions) {
+        this.lemmatizer = lemmatizer;
+        this.positions = withPositions ? new TokenPositions.Writer[32] : null;
+    }
+
+    void add(char[] word, int length) {
+        add(word, length, 0, 0);
+    }
+
+    /**
+     * @param ordinal порядковый номер слова в тексте
+     * @param start   смещение начала слова в тексте
+     */
+    void add(char[] word, int length, int ordinal, int start) {
+        int lemma = lemmaOf(word, length);
+        if (lemma == NO_LEMMA) {
+            return;
+        }
+        counts[lemma]++;
+        if (positions != null) {
+            TokenPositions.Writer writer = positions[lemma];
+            if (writer == null) {
+                writer = positions[lemma] = new TokenPositions.Writer();
+            }
+            writer.add(ordinal, start);
+        }
+    }
+
+    /**
+     * Закодированные позиции вхождений по леммам; пусто, если счётчик создан без позиций.
+     */
+    Map<String, byte[]> positionsMap() {
+        Map<String, byte[]> result = new HashMap<>(Math.max(16, lemmaIds.size() * 4 / 3 + 1));
+        if (positions != null) {
+            for (int i = 0; i < lemmaIds.size(); i++) {
+                result.put(lemmas[i], positions[i].toByteArray());
+            }
+        }
+        return result;
+    }
+
+    private int lemmaOf(char[] word, int length) {
+        int mask = forms.length - 1;
+        int slot = hash(word, length) & mask;
+        while (forms[slot] != null) {
+            if (equals(forms[slot], word, length)) {
+                return formLemmas[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        int lemma = lemmaId(lemmatizer.apply(new String(word, 0, length)));
+        forms[slot] = Arrays.copyOf(word, length);
+        formLemmas[slot] = lemma;
+        if (++formCount * 2 > forms.length) {
+            rehash();
+        }
+        return lemma;
+    }
+
+    Map<String, Integer> toMap() {
+        Map<String, Integer> result = new HashMap<>(Math.max(16, lemmaIds.size() * 4 / 3 + 1));
+        for (int i = 0; i < lemmaIds.size(); i++) {
+            result.put(lemmas[i], counts[i]);
+        }
+        return result;
+    }
+
+    private int lemmaId(String lemma) {
+        if (lemma == null) {
+            return NO_LEMMA;
+        }
+        Integer id = lemmaIds.get(lemma);
+        if (id != null) {
+            return id;
+        }
+        int next = lemmaIds.size();
+        if (next == lemmas.length) {
+            lemmas = Arrays.copyOf(lemmas, next * 2);
+            counts = Arrays.copyOf(counts, next * 2);
+            if (positions != null) {
+                positions = Arrays.copyOf(positions, next * 2);
+            }
+        }
+        lemmas[next] = lemma;
+        lemmaIds.put(lemma, next);
+        return next;
+    }
+
+    private void rehash() {
+        char[][] oldForms = forms;
+        int[] oldLemmas = formLemmas;
+        forms = new char[oldForms.length * 2][];
+        formLemmas = new int[oldForms.length * 2];
+        int mask = forms.length - 1;
+        for (int i = 0; i < oldForms.length; i++) {
+            if (oldForms[i] == null) {
+                continue;
+            }
+            int slot = hash(oldForms[i], oldForms[i].length) & mask;
+            while (forms[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            forms[slot] = oldForms[i];
+            formLemmas[slot] = oldLemmas[i];
+        }
+    }
+
+    private static int hash(char[] word, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + word[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(char[] form, char[] word, int length) {
+        if (form.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (form[i] != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
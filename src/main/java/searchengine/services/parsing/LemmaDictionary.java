@@ -0,0 +1,30 @@
+package searchengine.services.parsing;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Словарь лемм сайтов: лемма -> идентификатор строки в таблице lemma.
+ * Каждая лемма хранится в таблице один раз на сайт, её frequency - число страниц сайта с леммой.
+ * Словарь заполняется конвейером записи после фиксации транзакции и позволяет не искать
+ * идентификаторы уже известных лемм в базе.
+ */
+@Component
+public class LemmaDictionary {
+    private final Map<Integer, Map<String, Integer>> sites = new ConcurrentHashMap<>();
+
+    public Integer lemmaId(int siteId, String lemma) {
+        Map<String, Integer> lemmas = sites.get(siteId);
+        return lemmas == null ? null : lemmas.get(lemma);
+    }
+
+    public void putAll(int siteId, Map<String, Integer> lemmaIds) {
+        sites.computeIfAbsent(siteId, id -> new ConcurrentHashMap<>()).putAll(lemmaIds);
+    }
+
+    public void clear() {
+        sites.clear();
+    }
+}
@@ -1,73 +1,119 @@
 package searchengine.services.parsing;
 
-import lombok.SneakyThrows;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
 import org.springframework.stereotype.Component;
 import org.apache.lucene.morphology.LuceneMorphology;
+import searchengine.config.MorphologySettings;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+
+/**
+ * Лемматизация русского и английского текста. Текст разбирается {@link WordTokenizer} без промежуточных
+ * строк, леммы считает {@link LemmaCounter}; морфология вызывается один раз на словоформу текста.
+ * Слово, записанное латиницей, разбирается английской морфологией, кириллицей - русской;
+ * у каждого языка свой список неучитываемых частей речи.
+ * Экземпляр один на приложение: словари морфологии загружаются один раз и только читаются,
+ * поэтому несколько потоков обхода лемматизируют тексты одновременно. Нормальные формы частых
+ * словоформ берутся из общего {@link WordFormCache}.
+ */
 @Component
 public class Lemmatisation {
 
-    private final LuceneMorphology luceneMorphology = new RussianLuceneMorphology();
-    private static final String[] particlesNames = new String[]{"МЕЖД", "ПРЕДЛ", "СОЮЗ"};
+    private final Morphology russian;
+    private final Morphology english;
+    private final WordFormCache wordForms;
 
-    public Lemmatisation() throws IOException {
+    public Lemmatisation(MorphologySettings settings) throws IOException {
+        this.russian = new Morphology(new RussianLuceneMorphology(), Set.copyOf(settings.getRussianStopParts()));
+        this.english = new Morphology(new EnglishLuceneMorphology(), Set.copyOf(settings.getEnglishStopParts()));
+        this.wordForms = new WordFormCache(Math.max(16, settings.getWordFormCacheSize()));
     }
 
-    @SneakyThrows
     public Map<String, Integer> getLemmas(String text) {
-        Map<String, Integer> lemmas = new HashMap<>();
-        List<String> words = splitText(text);
+        LemmaCounter counter = new LemmaCounter(this::getLemma);
+        WordTokenizer.tokenize(text, (word, length, start, end) -> counter.add(word, length));
+        return counter.toMap();
+    }
 
-        for (String word : words) {
-            try {
-                if (word.isBlank()) {
-                    continue;
-                }
+    /**
+     * Леммы текста вместе с позициями вхождений: порядковым номером слова среди всех слов текста
+     * и смещением начала слова. Позиции кладутся в positions в формате {@link TokenPositions}.
+     */
+    public Map<String, Integer> getLemmas(String text, Map<String, byte[]> positions) {
+        LemmaCounter counter = new LemmaCounter(this::getLemma, true);
+        int[] ordinal = new int[1];
+        WordTokenizer.tokenize(text, (word, length, start, end) -> counter.add(word, length, ordinal[0]++, start));
+        positions.putAll(counter.positionsMap());
+        return counter.toMap();
+    }
 
-                if (isNotWord(word)) {
-                    continue;
-                }
+    /**
+     * Нормальная форма словоформы, выделенной {@link WordTokenizer}; null, если слово не учитывается.
+     */
+    public String getLemma(String word) {
+        return wordForms.get(word, this::normalForm);
+    }
 
-                List<String> normalForms = luceneMorphology.getNormalForms(word.toLowerCase());
-                if (normalForms.isEmpty()) {
-                    continue;
-                }
+    /**
+     * Счётчики кэша словоформ: размер, попадания, промахи и вытеснения.
+     */
+    public String getCacheStats() {
+        return String.format("словоформ в кэше %d, попаданий %d, промахов %d (%.1f%%), вытеснений %d",
+                wordForms.size(), wordForms.getHits(), wordForms.getMisses(),
+                wordForms.getHitRate() * 100, wordForms.getEvictions());
+    }
 
-                String normalWord = normalForms.get(0);
+    private String normalForm(String word) {
+        return (WordTokenizer.isLatin(word.charAt(0)) ? english : russian).normalForm(word);
+    }
+
+    private static final class Morphology {
+        private final LuceneMorphology luceneMorphology;
+        private final Set<String> stopParts;
 
-                if (lemmas.containsKey(normalWord)) {
-                    lemmas.put(normalWord, lemmas.get(normalWord) + 1);
-                } else {
-                    lemmas.put(normalWord, 1);
+        private Morphology(LuceneMorphology luceneMorphology, Set<String> stopParts) {
+            this.luceneMorphology = luceneMorphology;
+            this.stopParts = stopParts;
+        }
+
+        /**
+         * Нормальная форма слова по первому варианту разбора; null, если хотя бы один вариант -
+         * неучитываемая часть речи, и для слов, которых нет в словаре.
+         */
+        private String normalForm(String word) {
+            try {
+                List<String> morphInfo = luceneMorphology.getMorphInfo(word);
+                if (morphInfo.isEmpty()) {
+                    return null;
                 }
-            } catch (Exception e) {
+                for (String info : morphInfo) {
+                    if (stopParts.contains(partOfSpeech(info))) {
+                        return null;
+                    }
+                }
+                String first = morphInfo.get(0);
+                int separator = first.indexOf('|');
+                return separator < 0 ? first : first.substring(0, separator);
+            } catch (RuntimeException e) {
                 System.out.println("Can't get lemmas from word: " + word);
+                return null;
             }
         }
-        return lemmas;
-    }
-
-    private synchronized List<String> splitText(String text) {
-        String[] words = text.toLowerCase()
-                .replaceAll("[^А-я\\s]", "")
-                .trim()
-                .split("\\s+");
-        return new ArrayList<>(List.of(words));
-    }
 
-    private synchronized boolean isNotWord(String word) {
-        List<String> wordInfo = luceneMorphology.getMorphInfo(word);
-        for (String property : particlesNames) {
-            if (wordInfo.toString().toUpperCase().contains(property)) {
-                return luceneMorphology.checkString(word);
+        /**
+         * Часть речи из строки разбора вида "форма|код ЧАСТЬ_РЕЧИ признаки".
+         */
+        private static String partOfSpeech(String info) {
+            int start = info.indexOf(' ', info.indexOf('|') + 1) + 1;
+            if (start == 0) {
+                return "";
             }
+            int end = info.indexOf(' ', start);
+            return end < 0 ? info.substring(start) : info.substring(start, end);
         }
-        return false;
     }
 }
@@ -0,0 +1,96 @@
+package searchengine.services.parsing;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Асинхронная загрузка страниц через общий {@link HttpClient}: HTTP/2 с откатом на HTTP/1.1,
+ * пул соединений, сжатие gzip/deflate. Сетевое ожидание не занимает потоки разбора:
+ * клиент держит сколько угодно запросов в полёте на своём небольшом пуле, а разбор
+ * ответа выполняет вызывающий в своём пуле.
+ */
+@Component
+public class PageFetcher {
+    private final CrawlerSettings settings;
+    private final ExecutorService executor;
+    private final HttpClient client;
+
+    public PageFetcher(CrawlerSettings settings) {
+        this.settings = settings;
+        this.executor = Executors.newFixedThreadPool(Math.max(2, settings.getFetchThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "page-fetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(settings.getConnectTimeout())
+                .executor(executor)
+                .build();
+    }
+
+    public CompletableFuture<FetchedPage> fetch(String url) {
+        return fetch(url, Map.of());
+    }
+
+    /**
+     * Загружает страницу с дополнительными заголовками запроса.
+     */
+    public CompletableFuture<FetchedPage> fetch(String url, Map<String, String> headers) {
+        HttpRequest.Builder request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(settings.getFetchTimeout())
+                    .header("User-Agent", new UserAgent().getUserAgent())
+                    .header("Referer", "https://www.google.com")
+                    .header("Accept-Encoding", "gzip, deflate");
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        headers.forEach(request::header);
+        return client.sendAsync(request.GET().build(), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> new FetchedPage(url, response.uri().toString(),
+                        response.statusCode(), response.headers(),
+                        decode(response.headers().firstValue("Content-Encoding").orElse(""), response.body())));
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] decode(String encoding, byte[] body) {
+        String normalized = encoding.trim().toLowerCase(Locale.ROOT);
+        if (normalized.isEmpty() || normalized.equals("identity")) {
+            return body;
+        }
+        if (!normalized.equals("gzip") && !normalized.equals("deflate")) {
+            return body;
+        }
+        try (InputStream stream = normalized.equals("gzip")
+                ? new GZIPInputStream(new ByteArrayInputStream(body))
+                : new InflaterInputStream(new ByteArrayInputStream(body))) {
+            return stream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
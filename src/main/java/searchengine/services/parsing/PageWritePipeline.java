@@ -0,0 +1,405 @@
+package searchengine.services.parsing;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+import searchengine.services.index.InvertedIndex;
+import searchengine.services.index.LemmaStatistics;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Конвейер записи страниц. Потоки обхода сайтов кладут разобранные страницы в ограниченную очередь
+ * (и ждут, если она заполнена), отдельный поток записи набирает пакет из crawler-settings.write-batch-size
+ * страниц или ждёт не дольше crawler-settings.write-flush-interval и записывает страницы, леммы и
+ * индекс пакетными многострочными INSERT в одной транзакции. Прежние версии заменяемых страниц
+ * и удалённые страницы удаляются в той же транзакции. Леммы хранятся по одной строке на сайт:
+ * частоты пакета суммируются и применяются одним upsert, идентификаторы новых лемм читаются из базы
+ * и запоминаются в {@link LemmaDictionary}. После фиксации страницы добавляются в
+ * инвертированный индекс и в {@link LemmaStatistics}. Если пакет не удалось записать,
+ * страницы записываются по одной. Если поток записи завершился (остановка или ошибка),
+ * ожидающие записи страницы и барьеры завершаются с ошибкой, а новые не принимаются.
+ */
+@Slf4j
+@Component
+public class PageWritePipeline {
+    private static final String INSERT_PAGE =
+            "insert into page (site_id, page_path, page_code, page_content, page_title, page_text, " +
+            "doc_length, etag, last_modified, content_hash) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_LEMMA =
+            "insert into lemma (site_id, lemma, frequency) values (?, ?, ?) " +
+            "on duplicate key update frequency = frequency + values(frequency)";
+    private static final String SELECT_LEMMA_IDS =
+            "select lemma_id, lemma from lemma where site_id = ? and lemma in (";
+    private static final String INSERT_INDEX =
+            "insert into search_index (page_id, lemma_id, search_rank, positions) values (?, ?, ?, ?)";
+    private static final String SELECT_REPLACED_LEMMAS =
+            "select s.page_id, l.lemma, s.search_rank from search_index s join lemma l on l.lemma_id = s.lemma_id " +
+            "where s.page_id in (";
+    private static final String DECREMENT_LEMMAS =
+            "update lemma l join search_index s on s.lemma_id = l.lemma_id " +
+            "set l.frequency = l.frequency - 1 where s.page_id = ?";
+    private static final String DELETE_INDEX = "delete from search_index where page_id = ?";
+    private static final String DELETE_PAGE = "delete from page where page_id = ?";
+    private static final int MAX_STATEMENT_ROWS = 5_000;
+    private static final int MAX_SELECT_LEMMAS = 1_000;
+
+    private final DataSource dataSource;
+    private final InvertedIndex invertedIndex;
+    private final LemmaDictionary lemmaDictionary;
+    private final LemmaStatistics lemmaStatistics;
+    private final CrawlerSettings settings;
+    private final BlockingQueue<ParsedPage> queue;
+    private volatile boolean running;
+    private volatile boolean stopped;
+    private Thread writer;
+
+    public PageWritePipeline(DataSource dataSource, InvertedIndex invertedIndex, LemmaDictionary lemmaDictionary,
+                             LemmaStatistics lemmaStatistics, CrawlerSettings settings) {
+        this.dataSource = dataSource;
+        this.invertedIndex = invertedIndex;
+        this.lemmaDictionary = lemmaDictionary;
+        this.lemmaStatistics = lemmaStatistics;
+        this.settings = settings;
+        this.queue = new ArrayBlockingQueue<>(settings.getWriteQueueSize());
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::run, "page-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.MINUTES.toMillis(1));
+    }
+
+    /**
+     * Ставит страницу в очередь записи, ожидая освобождения места.
+     *
+     * @throws IllegalStateException если поток записи уже завершился
+     */
+    public void submit(ParsedPage page) throws InterruptedException {
+        while (!queue.offer(page, 1, TimeUnit.SECONDS)) {
+            if (stopped) {
+                throw new IllegalStateException("Конвейер записи страниц остановлен");
+            }
+        }
+        if (stopped) {
+            failPending();
+        }
+    }
+
+    /**
+     * Ожидает записи всех страниц, поставленных в очередь до вызова.
+     *
+     * @throws java.util.concurrent.CompletionException если поток записи завершился раньше
+     */
+    public void flush() throws InterruptedException {
+        ParsedPage barrier = ParsedPage.barrier();
+        submit(barrier);
+        barrier.getWritten().join();
+    }
+
+    private void run() {
+        try {
+            writeLoop();
+        } finally {
+            stopped = true;
+            failPending();
+        }
+    }
+
+    private void writeLoop() {
+        long interval = settings.getWriteFlushInterval().toMillis();
+        List<ParsedPage> batch = new ArrayList<>(settings.getWriteBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                ParsedPage first = queue.poll(interval, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + interval;
+                while (!first.isBarrier() && batch.size() < settings.getWriteBatchSize()) {
+                    ParsedPage next = queue.poll(Math.max(0, deadline - System.currentTimeMillis()),
+                            TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    if (next.isBarrier()) {
+                        break;
+                    }
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Ошибка конвейера записи страниц", e);
+                batch.forEach(page -> page.getWritten().completeExceptionally(e));
+            } catch (Error e) {
+                log.error("Поток записи страниц аварийно завершён", e);
+                batch.forEach(page -> page.getWritten().completeExceptionally(e));
+                throw e;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Завершает с ошибкой всё, что осталось в очереди после остановки потока записи.
+     */
+    private void failPending() {
+        IllegalStateException stoppedException = new IllegalStateException("Конвейер записи страниц остановлен");
+        ParsedPage page;
+        while ((page = queue.poll()) != null) {
+            page.getWritten().completeExceptionally(stoppedException);
+        }
+    }
+
+    private void write(List<ParsedPage> batch) {
+        List<ParsedPage> pages = batch.stream().filter(page -> !page.isBarrier()).toList();
+        long start = System.currentTimeMillis();
+        try {
+            insert(pages);
+        } catch (SQLException e) {
+            log.warn("Пакет из {} страниц не записан ({}), запись по одной", pages.size(), e.getMessage());
+            for (ParsedPage page : pages) {
+                try {
+                    insert(List.of(page));
+                } catch (SQLException pageException) {
+                    log.error("Страница {} не записана: {}", page.getPath(), pageException.getMessage());
+                    page.getWritten().completeExceptionally(pageException);
+                }
+            }
+        }
+        Set<Integer> changedSites = new HashSet<>();
+        for (ParsedPage page : pages) {
+            boolean written = page.isRemoval()
+                    ? !page.getWritten().isCompletedExceptionally()
+                    : page.getPageId() > 0;
+            if (!written) {
+                continue;
+            }
+            if (page.getReplacedPageId() > 0) {
+                invertedIndex.removePage(page.getSiteId(), page.getReplacedPageId());
+                if (page.getReplacedLemmas() != null) {
+                    lemmaStatistics.removePage(page.getSiteId(), page.getReplacedLemmas());
+                }
+            }
+            if (!page.isRemoval()) {
+                invertedIndex.addPage(page.getSiteId(), page.getPageId(), page.getPath(), page.getTitle(),
+                        page.getLemmas());
+                lemmaStatistics.addPage(page.getSiteId(), page.getLemmas());
+            }
+            changedSites.add(page.getSiteId());
+            page.getWritten().complete(null);
+        }
+        changedSites.forEach(lemmaStatistics::refreshStopLemmas);
+        batch.stream().filter(ParsedPage::isBarrier).forEach(barrier -> barrier.getWritten().complete(null));
+        if (!pages.isEmpty()) {
+            log.debug("Записано {} страниц за {} мс", pages.size(), System.currentTimeMillis() - start);
+        }
+    }
+
+    private void insert(List<ParsedPage> entries) throws SQLException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<ParsedPage> pages = entries.stream().filter(page -> !page.isRemoval()).toList();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                List<Object[]> replaced = new ArrayList<>();
+                for (ParsedPage page : entries) {
+                    if (page.getReplacedPageId() > 0) {
+                        replaced.add(new Object[]{page.getReplacedPageId()});
+                    }
+                }
+                Map<Integer, Map<String, Float>> replacedLemmas = selectReplacedLemmas(connection, replaced);
+                executeBatch(connection, DECREMENT_LEMMAS, replaced, false);
+                executeBatch(connection, DELETE_INDEX, replaced, false);
+                executeBatch(connection, DELETE_PAGE, replaced, false);
+                int[] pageIds = insertPages(connection, pages);
+                Map<Integer, Map<String, Integer>> frequencies = new HashMap<>();
+                for (ParsedPage page : pages) {
+                    Map<String, Integer> siteFrequencies =
+                            frequencies.computeIfAbsent(page.getSiteId(), id -> new HashMap<>());
+                    for (String lemma : page.getLemmas().keySet()) {
+                        siteFrequencies.merge(lemma, 1, Integer::sum);
+                    }
+                }
+                List<Object[]> lemmaRows = new ArrayList<>();
+                frequencies.forEach((siteId, siteFrequencies) -> siteFrequencies.forEach((lemma, frequency) ->
+                        lemmaRows.add(new Object[]{siteId, lemma, frequency})));
+                executeBatch(connection, INSERT_LEMMA, lemmaRows, false);
+                Map<Integer, Map<String, Integer>> learned = new HashMap<>();
+                for (Map.Entry<Integer, Map<String, Integer>> site : frequencies.entrySet()) {
+                    learned.put(site.getKey(), selectLemmaIds(connection, site.getKey(), site.getValue().keySet()));
+                }
+                List<Object[]> indexRows = new ArrayList<>(lemmaRows.size());
+                for (int i = 0; i < pages.size(); i++) {
+                    ParsedPage page = pages.get(i);
+                    Map<String, Integer> siteLearned = learned.get(page.getSiteId());
+                    for (Map.Entry<String, Integer> lemma : page.getLemmas().entrySet()) {
+                        Integer lemmaId = siteLearned.get(lemma.getKey());
+                        if (lemmaId == null) {
+                            lemmaId = lemmaDictionary.lemmaId(page.getSiteId(), lemma.getKey());
+                        }
+                        byte[] positions = page.getPositions() == null ? null : page.getPositions().get(lemma.getKey());
+                        indexRows.add(new Object[]{pageIds[i], lemmaId, lemma.getValue().floatValue(), positions});
+                    }
+                }
+                executeBatch(connection, INSERT_INDEX, indexRows, false);
+                connection.commit();
+                learned.forEach(lemmaDictionary::putAll);
+                for (ParsedPage page : entries) {
+                    if (page.getReplacedPageId() > 0) {
+                        page.setReplacedLemmas(replacedLemmas.getOrDefault(page.getReplacedPageId(), Map.of()));
+                    }
+                }
+                for (int i = 0; i < pages.size(); i++) {
+                    pages.get(i).setPageId(pageIds[i]);
+                }
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private int[] insertPages(Connection connection, List<ParsedPage> pages) throws SQLException {
+        List<Object[]> rows = new ArrayList<>(pages.size());
+        for (ParsedPage page : pages) {
+            rows.add(new Object[]{page.getSiteId(), page.getPath(), page.getCode(), page.getContent(),
+                    page.getTitle(), page.getText(), page.getDocLength(), page.getEtag(), page.getLastModified(), page.getContentHash()});
+        }
+        return executeBatch(connection, INSERT_PAGE, rows, true);
+    }
+
+    /**
+     * Читает леммы и ранги заменяемых страниц, чтобы после фиксации вычесть их из статистики лемм.
+     */
+    private Map<Integer, Map<String, Float>> selectReplacedLemmas(Connection connection, List<Object[]> replaced)
+            throws SQLException {
+        Map<Integer, Map<String, Float>> lemmas = new HashMap<>();
+        for (int from = 0; from < replaced.size(); from += MAX_SELECT_LEMMAS) {
+            List<Object[]> chunk = replaced.subList(from, Math.min(replaced.size(), from + MAX_SELECT_LEMMAS));
+            String sql = SELECT_REPLACED_LEMMAS + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    statement.setObject(i + 1, chunk.get(i)[0]);
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        lemmas.computeIfAbsent(resultSet.getInt(1), id -> new HashMap<>())
+                                .put(resultSet.getString(2), resultSet.getFloat(3));
+                    }
+                }
+            }
+        }
+        return lemmas;
+    }
+
+    /**
+     * Читает идентификаторы лемм сайта, которых ещё нет в словаре.
+     */
+    private Map<String, Integer> selectLemmaIds(Connection connection, int siteId, Set<String> lemmas)
+            throws SQLException {
+        List<String> unknown = new ArrayList<>();
+        for (String lemma : lemmas) {
+            if (lemmaDictionary.lemmaId(siteId, lemma) == null) {
+                unknown.add(lemma);
+            }
+        }
+        Map<String, Integer> lemmaIds = new HashMap<>(unknown.size() * 2);
+        for (int from = 0; from < unknown.size(); from += MAX_SELECT_LEMMAS) {
+            List<String> chunk = unknown.subList(from, Math.min(unknown.size(), from + MAX_SELECT_LEMMAS));
+            String sql = SELECT_LEMMA_IDS + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, siteId);
+                for (int i = 0; i < chunk.size(); i++) {
+                    statement.setString(i + 2, chunk.get(i));
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        lemmaIds.put(resultSet.getString(2), resultSet.getInt(1));
+                    }
+                }
+            }
+        }
+        for (String lemma : unknown) {
+            if (!lemmaIds.containsKey(lemma)) {
+                lemmaIds.put(lemma, selectCollatedLemmaId(connection, siteId, lemma));
+            }
+        }
+        return lemmaIds;
+    }
+
+    /**
+     * Идентификатор строки, с которой лемма слилась по уникальному ключу site_lemma_index
+     * (в таблицах, созданных до перехода столбца lemma на двоичное сравнение, например «ёлка» и «елка»).
+     */
+    private int selectCollatedLemmaId(Connection connection, int siteId, String lemma) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_LEMMA_IDS + "?)")) {
+            statement.setInt(1, siteId);
+            statement.setString(2, lemma);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    throw new SQLException("Лемма " + lemma + " не найдена после записи");
+                }
+                return resultSet.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Выполняет вставку строк пакетами; при rewriteBatchedStatements драйвер MySQL
+     * превращает каждый пакет в многострочный INSERT.
+     *
+     * @return сгенерированные ключи в порядке строк, если они запрошены
+     */
+    private int[] executeBatch(Connection connection, String sql, List<Object[]> rows, boolean generatedKeys)
+            throws SQLException {
+        int[] keys = new int[generatedKeys ? rows.size() : 0];
+        try (PreparedStatement statement = generatedKeys
+                ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                : connection.prepareStatement(sql)) {
+            int key = 0;
+            for (int from = 0; from < rows.size(); from += MAX_STATEMENT_ROWS) {
+                for (Object[] row : rows.subList(from, Math.min(rows.size(), from + MAX_STATEMENT_ROWS))) {
+                    for (int i = 0; i < row.length; i++) {
+                        statement.setObject(i + 1, row[i]);
+                    }
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                if (generatedKeys) {
+                    try (ResultSet resultSet = statement.getGeneratedKeys()) {
+                        while (resultSet.next()) {
+                            keys[key++] = resultSet.getInt(1);
+                        }
+                    }
+                }
+            }
+            if (generatedKeys && key != rows.size()) {
+                throw new SQLException("Получено " + key + " ключей для " + rows.size() + " строк");
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,88 @@
+package searchengine.services.parsing;
+
+import lombok.Getter;
+import lombok.Setter;
+import searchengine.services.index.InvertedIndex;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Загруженная и разобранная страница, ожидающая записи в базу и индекс.
+ */
+@Getter
+public class ParsedPage {
+    private final int siteId;
+    private final String path;
+    private final int code;
+    private final String content;
+    private final String title;
+    private final Map<String, Integer> lemmas;
+    private final int docLength;
+    /**
+     * Завершается после записи страницы в базу и индекс.
+     */
+    private final CompletableFuture<Void> written = new CompletableFuture<>();
+    @Setter
+    private int pageId;
+    /**
+     * Видимый текст страницы, извлечённый при обходе.
+     */
+    @Setter
+    private String text;
+    /**
+     * Позиции вхождений лемм в тексте ({@link TokenPositions}); null, если позиции не сохраняются.
+     */
+    @Setter
+    private Map<String, byte[]> positions;
+    @Setter
+    private String etag;
+    @Setter
+    private String lastModified;
+    @Setter
+    private String contentHash;
+    /**
+     * Идентификатор прежней версии страницы, которую запись заменяет (или удаляет, если страницы нет).
+     */
+    @Setter
+    private int replacedPageId;
+    /**
+     * Ранги лемм заменённой версии страницы, прочитанные перед её удалением.
+     */
+    @Setter
+    private Map<String, Float> replacedLemmas;
+
+    public ParsedPage(int siteId, String path, int code, String content, String title, Map<String, Integer> lemmas) {
+        this.siteId = siteId;
+        this.path = path;
+        this.code = code;
+        this.content = content;
+        this.title = title;
+        this.lemmas = lemmas;
+        this.docLength = lemmas == null ? 0 : InvertedIndex.documentLength(lemmas);
+    }
+
+    /**
+     * Пустая запись, по которой можно дождаться записи всех страниц, поставленных в очередь раньше неё.
+     */
+    static ParsedPage barrier() {
+        return new ParsedPage(0, null, 0, null, null, null);
+    }
+
+    boolean isBarrier() {
+        return path == null && replacedPageId == 0;
+    }
+
+    /**
+     * Запись, удаляющая страницу, которой больше нет на сайте.
+     */
+    static ParsedPage removal(int siteId, int pageId) {
+        ParsedPage removal = new ParsedPage(siteId, null, 0, null, null, null);
+        removal.setReplacedPageId(pageId);
+        return removal;
+    }
+
+    boolean isRemoval() {
+        return path == null && replacedPageId > 0;
+    }
+}
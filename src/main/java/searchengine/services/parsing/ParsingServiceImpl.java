@@ -2,20 +2,24 @@ package searchengine.services.parsing;
 
 import lombok.SneakyThrows;
 import org.springframework.stereotype.Service;
+import searchengine.config.CrawlerSettings;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
 import searchengine.dto.indexing.IndexingResponse;
+import searchengine.dto.indexing.IndexingStatusResponse;
+import searchengine.dto.indexing.SiteIndexingStatus;
 import searchengine.model.entities.*;
 import searchengine.model.repositories.LemmaRepository;
 import searchengine.model.repositories.PageRepository;
 import searchengine.model.repositories.SearchIndexRepository;
 import searchengine.model.repositories.SiteRepository;
 import searchengine.services.ParsingService;
+import searchengine.services.index.InvertedIndex;
+import searchengine.services.index.LemmaStatistics;
 
 import java.time.LocalDateTime;
-import java.util.TreeSet;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
+import java.util.ArrayList;
+import java.util.List;
 
 @Service
 public class ParsingServiceImpl implements ParsingService {
@@ -24,61 +28,116 @@ public class ParsingServiceImpl implements ParsingService {
     private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
     private final SearchIndexRepository searchIndexRepository;
-    private boolean started;
+    private final InvertedIndex invertedIndex;
+    private final PageWritePipeline writePipeline;
+    private final LemmaDictionary lemmaDictionary;
+    private final LemmaStatistics lemmaStatistics;
+    private final CrawlerSettings crawlerSettings;
+    private final PageFetcher fetcher;
+    private final Lemmatisation lemmatisation;
+    private final IndexingJobManager jobManager;
     private boolean contains;
     private SiteEntity siteEntity;
-    private ForkJoinPool forkJoinPool;
 
     public ParsingServiceImpl(SitesList sites,
                               SiteRepository siteRepository,
                               PageRepository pageRepository,
                               LemmaRepository lemmaRepository,
-                              SearchIndexRepository searchIndexRepository) {
+                              SearchIndexRepository searchIndexRepository,
+                              InvertedIndex invertedIndex,
+                              PageWritePipeline writePipeline,
+                              LemmaDictionary lemmaDictionary,
+                              LemmaStatistics lemmaStatistics,
+                              CrawlerSettings crawlerSettings,
+                              PageFetcher fetcher,
+                              Lemmatisation lemmatisation,
+                              IndexingJobManager jobManager) {
         this.sites = sites;
         this.siteRepository = siteRepository;
         this.pageRepository = pageRepository;
         this.lemmaRepository = lemmaRepository;
         this.searchIndexRepository = searchIndexRepository;
+        this.invertedIndex = invertedIndex;
+        this.writePipeline = writePipeline;
+        this.lemmaDictionary = lemmaDictionary;
+        this.lemmaStatistics = lemmaStatistics;
+        this.crawlerSettings = crawlerSettings;
+        this.fetcher = fetcher;
+        this.lemmatisation = lemmatisation;
+        this.jobManager = jobManager;
     }
 
     @Override
-    @SneakyThrows
     public IndexingResponse startIndexing() {
-        if (started) {
+        if (jobManager.isRunning()) {
+            return new IndexingResponse(false, "Индексация уже запущена");
+        }
+        IndexingJob job = crawlerSettings.isIncremental()
+                ? jobManager.start(sites.getSites(), false)
+                : jobManager.startFromScratch(sites.getSites(), this::clearIndex);
+        if (job == null) {
             return new IndexingResponse(false, "Индексация уже запущена");
-        } else {
-            started = true;
         }
+        return new IndexingResponse(true, job.getId());
+    }
+
+    private void clearIndex() {
         searchIndexRepository.deleteAll();
         lemmaRepository.deleteAll();
         pageRepository.deleteAll();
         siteRepository.deleteAll();
+        invertedIndex.clear();
+        lemmaDictionary.clear();
+        lemmaStatistics.clear();
+    }
 
-        for (Site site : sites.getSites()) {
-            indexSite(site);
+    @Override
+    public IndexingResponse stopIndexing(String site) {
+        if (jobManager.cancel(site) == 0) {
+            return new IndexingResponse(false, "Индексация не запущена");
         }
-        started = false;
         return new IndexingResponse(true);
     }
 
     @Override
-    public IndexingResponse stopIndexing() {
-        if (!started) {
-            return new IndexingResponse(false, "Индексация не запущена");
-        } else {
-            started = false;
+    public IndexingResponse resumeIndexing(String site) {
+        Site resumed = sites.getSites().stream()
+                .filter(configured -> configured.getUrl().equalsIgnoreCase(site))
+                .findFirst()
+                .orElse(null);
+        if (resumed == null) {
+            return new IndexingResponse(false, "Сайт не указан в конфигурационном файле");
         }
-        forkJoinPool.shutdownNow();
-        Iterable<SiteEntity> siteList = siteRepository.findAll();
-        for (SiteEntity site : siteList) {
-            if (site.getStatus() == Status.INDEXING) {
-                site.setStatus(Status.FAILED);
-                site.setStatusTime(LocalDateTime.now());
-                site.setLastError("Процесс индексации остановлен");
-                siteRepository.save(site);
-            }
+        IndexingJob job = jobManager.start(List.of(resumed), true);
+        if (job == null) {
+            return new IndexingResponse(false, "Индексация сайта уже запущена");
         }
-        return new IndexingResponse(true);
+        return new IndexingResponse(true, job.getId());
+    }
+
+    @Override
+    public IndexingStatusResponse getIndexingStatus(long jobId) {
+        IndexingStatusResponse response = new IndexingStatusResponse();
+        IndexingJob job = jobManager.getJob(jobId);
+        if (job == null) {
+            response.setError("Задание индексации не найдено");
+            return response;
+        }
+        response.setResult(true);
+        response.setJobId(jobId);
+        response.setFinished(job.isDone());
+        List<SiteIndexingStatus> siteStatuses = new ArrayList<>();
+        for (SiteIndexingJob siteJob : job.getSites()) {
+            SiteIndexingStatus siteStatus = new SiteIndexingStatus();
+            siteStatus.setUrl(siteJob.getSite().getUrl());
+            siteStatus.setName(siteJob.getSite().getName());
+            siteStatus.setStatus(siteJob.getStatus().toString());
+            siteStatus.setError(siteJob.getError());
+            siteStatus.setPages(siteJob.getPages());
+            siteStatuses.add(siteStatus);
+        }
+        response.setSites(siteStatuses);
+        return response;
     }
 
     @Override
@@ -118,8 +177,11 @@ public class ParsingServiceImpl implements ParsingService {
                     siteEntity,
                     pageRepository,
                     siteRepository,
-                    lemmaRepository,
-                    searchIndexRepository);
+                    invertedIndex,
+                    writePipeline,
+                    fetcher,
+                    lemmatisation,
+                    crawlerSettings.isStorePositions());
             pageParser.parsePage();
             return new IndexingResponse(true);
         }
@@ -129,33 +191,4 @@ public class ParsingServiceImpl implements ParsingService {
                     "указанных в конфигурационном файле");
         }
     }
-
-    private void indexSite(Site site) throws ExecutionException, InterruptedException {
-        SiteEntity siteEntity = new SiteEntity();
-        siteEntity.setName(site.getName());
-        siteEntity.setUrl(site.getUrl());
-        siteEntity.setStatus(Status.INDEXING);
-        siteEntity.setStatusTime(LocalDateTime.now());
-        siteRepository.save(siteEntity);
-
-        TreeSet<String> hrefList = new TreeSet<>();
-        hrefList.add(site.getUrl());
-
-        forkJoinPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
-        SiteParser siteParser = new SiteParser(
-                site.getUrl(),
-                hrefList,
-                siteEntity,
-                pageRepository,
-                siteRepository,
-                lemmaRepository,
-                searchIndexRepository);
-        forkJoinPool.execute(siteParser);
-
-        forkJoinPool.shutdown();
-
-        siteEntity.setStatus(Status.INDEXED);
-        siteEntity.setStatusTime(LocalDateTime.now());
-        siteRepository.save(siteEntity);
-    }
 }
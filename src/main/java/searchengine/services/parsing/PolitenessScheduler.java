@@ -0,0 +1,153 @@
+package searchengine.services.parsing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlerSettings;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограничение частоты запросов к хостам. Для каждого хоста ведётся корзина маркеров
+ * (в форме GCRA: хранится только момент, к которому корзина снова станет полной),
+ * интервал между запросами не меньше Crawl-delay из robots.txt. {@link #reserve(String)}
+ * не ждёт, а возвращает задержку, через которую запрос можно выполнить, - задачу
+ * откладывают на это время, не занимая поток.
+ */
+@Slf4j
+@Component
+public class PolitenessScheduler {
+    private static final int ROBOTS_TIMEOUT_SECONDS = 5;
+    private final CrawlerSettings settings;
+    private final PageFetcher fetcher;
+    private final Map<String, HostBucket> hosts = new ConcurrentHashMap<>();
+
+    public PolitenessScheduler(CrawlerSettings settings, PageFetcher fetcher) {
+        this.settings = settings;
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * Настраивает корзину хоста сайта: частота запросов сайта (или crawler-settings.request-rate),
+     * но не чаще, чем разрешает Crawl-delay.
+     */
+    public void register(String siteUrl, Double requestRate) {
+        String host = host(siteUrl);
+        double rate = requestRate == null ? settings.getRequestRate() : requestRate;
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long crawlDelay = crawlDelay(siteUrl);
+        if (crawlDelay > interval) {
+            log.info("{}: Crawl-delay {} мс", host, TimeUnit.NANOSECONDS.toMillis(crawlDelay));
+            interval = crawlDelay;
+        }
+        hosts.put(host, new HostBucket(interval, Math.max(1, settings.getRequestBurst())));
+    }
+
+    /**
+     * Резервирует запрос к хосту адреса.
+     *
+     * @return задержка в наносекундах, по истечении которой запрос можно отправить
+     */
+    public long reserve(String url) {
+        String host = host(url);
+        HostBucket bucket = hosts.get(host);
+        if (bucket == null) {
+            bucket = hosts.computeIfAbsent(host, h -> new HostBucket(
+                    (long) (TimeUnit.SECONDS.toNanos(1) / settings.getRequestRate()),
+                    Math.max(1, settings.getRequestBurst())));
+        }
+        return bucket.reserve(System.nanoTime());
+    }
+
+    private long crawlDelay(String siteUrl) {
+        String robots = siteUrl;
+        try {
+            URI uri = URI.create(siteUrl.trim());
+            robots = uri.getScheme() + "://" + uri.getRawAuthority() + "/robots.txt";
+            FetchedPage response = fetcher.fetch(robots).get(ROBOTS_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return response.getCode() == 200 ? parseCrawlDelay(response.html()) : 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (ExecutionException | TimeoutException | RuntimeException e) {
+            log.debug("{} не загружен: {}", robots, e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Crawl-delay первой группы robots.txt для любого агента (User-agent: *), в наносекундах.
+     */
+    static long parseCrawlDelay(String robots) {
+        boolean anyAgent = false;
+        boolean agentLines = false;
+        for (String line : robots.split("\\R")) {
+            int comment = line.indexOf('#');
+            String entry = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            int colon = entry.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = entry.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = entry.substring(colon + 1).trim();
+            if (key.equals("user-agent")) {
+                anyAgent = agentLines ? anyAgent || value.equals("*") : value.equals("*");
+                agentLines = true;
+                continue;
+            }
+            agentLines = false;
+            if (anyAgent && key.equals("crawl-delay")) {
+                try {
+                    return (long) (Double.parseDouble(value) * TimeUnit.SECONDS.toNanos(1));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static String host(String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+        String authority = url.substring(url.lastIndexOf('@', end - 1) + 1 > start
+                ? url.lastIndexOf('@', end - 1) + 1 : start, end);
+        int port = authority.lastIndexOf(':');
+        return (port > 0 && authority.indexOf(']') < port ? authority.substring(0, port) : authority)
+                .toLowerCase(Locale.ROOT);
+    }
+
+    private static final class HostBucket {
+        private final long interval;
+        private final long tolerance;
+        /**
+         * Теоретическое время прихода следующего запроса (System.nanoTime()).
+         */
+        private final AtomicLong arrival = new AtomicLong(System.nanoTime());
+
+        private HostBucket(long interval, int burst) {
+            this.interval = interval;
+            this.tolerance = interval * (burst - 1);
+        }
+
+        private long reserve(long now) {
+            while (true) {
+                long current = arrival.get();
+                long sendAt = Math.max(now, current - tolerance);
+                if (arrival.compareAndSet(current, Math.max(current, now) + interval)) {
+                    return sendAt - now;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package searchengine.services.parsing;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.Site;
+import searchengine.model.entities.SiteEntity;
+import searchengine.model.entities.Status;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Индексация одного сайта в собственном пуле потоков (бюджет crawler-settings.site-threads).
+ * Статус сайта меняется только по фактическому завершению обхода и записи всех его страниц:
+ * остановка, пришедшая после конца обхода, на статус не влияет.
+ */
+@Slf4j
+public class SiteIndexingJob {
+    @Getter
+    private final Site site;
+    private final IndexingJobManager manager;
+    private final ForkJoinPool pool;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    @Getter
+    private volatile Status status = Status.INDEXING;
+    @Getter
+    private volatile String error;
+    private final boolean resume;
+    private volatile boolean cancelled;
+    private volatile SiteParser parser;
+
+    SiteIndexingJob(Site site, IndexingJobManager manager, int threads, boolean resume) {
+        this.site = site;
+        this.manager = manager;
+        this.resume = resume;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    void start() {
+        pool.execute(this::run);
+    }
+
+    /**
+     * Останавливает индексацию сайта; уже загруженные страницы дописываются.
+     */
+    public void cancel() {
+        cancelled = true;
+        SiteParser current = parser;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    public boolean isDone() {
+        return done.isDone();
+    }
+
+    public CompletableFuture<Void> getCompletion() {
+        return done;
+    }
+
+    public int getPages() {
+        SiteParser current = parser;
+        return current == null ? 0 : current.getVisitedCount();
+    }
+
+    private void run() {
+        SiteEntity siteEntity = null;
+        CrawlCheckpoint checkpoint = null;
+        try {
+            siteEntity = manager.prepareSite(site);
+            checkpoint = manager.openCheckpoint(siteEntity, resume);
+            SiteParser siteParser = manager.createParser(site, siteEntity, checkpoint);
+            parser = siteParser;
+            if (cancelled) {
+                siteParser.cancel();
+            }
+            siteParser.invoke();
+            manager.flush(siteEntity);
+            if (siteParser.isCompleted()) {
+                checkpoint.delete();
+                checkpoint = null;
+                finish(siteEntity, Status.INDEXED, null);
+            } else {
+                finish(siteEntity, Status.RESUMABLE, "Процесс индексации остановлен");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finish(siteEntity, checkpoint == null ? Status.FAILED : Status.RESUMABLE, "Процесс индексации прерван");
+        } catch (IOException | RuntimeException e) {
+            log.error("Ошибка индексации {}", site.getUrl(), e);
+            finish(siteEntity, Status.FAILED, e.getMessage());
+        } finally {
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
+            pool.shutdown();
+            done.complete(null);
+        }
+    }
+
+    private void finish(SiteEntity siteEntity, Status status, String error) {
+        this.error = error;
+        this.status = status;
+        if (siteEntity != null) {
+            siteEntity.setStatus(status);
+            siteEntity.setStatusTime(LocalDateTime.now());
+            siteEntity.setLastError(error);
+            manager.saveSite(siteEntity);
+        }
+    }
+}
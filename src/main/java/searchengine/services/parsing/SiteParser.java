@@ -1,135 +1,280 @@
 package searchengine.services.parsing;
 
-import lombok.SneakyThrows;
-import org.jsoup.Connection;
-import org.jsoup.HttpStatusException;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
-import searchengine.model.entities.LemmaEntity;
-import searchengine.model.entities.PageEntity;
-import searchengine.model.entities.SearchIndex;
+import lombok.extern.slf4j.Slf4j;
 import searchengine.model.entities.SiteEntity;
-import searchengine.model.repositories.LemmaRepository;
-import searchengine.model.repositories.PageRepository;
-import searchengine.model.repositories.SearchIndexRepository;
-import searchengine.model.repositories.SiteRepository;
+import searchengine.model.repositories.PageValidatorsView;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Обход сайта в ширину. Страницы одного уровня глубины загружаются параллельно,
+ * найденные ссылки попадают в {@link UrlFrontier} на следующий уровень.
+ * Загрузка каждой страницы откладывается на время, назначенное {@link PolitenessScheduler},
+ * и выполняется асинхронно через {@link PageFetcher}; пул сайта занят только разбором
+ * и лемматизацией уже загруженных страниц.
+ * Страницы, сохранённые прошлым обходом, запрашиваются условно (If-None-Match, If-Modified-Since);
+ * при ответе 304 или совпадении хеша содержимого из них только извлекаются ссылки,
+ * при ответе 404 или 410 они удаляются, а при других ошибках остаются в индексе без изменений,
+ * и ссылки берутся из сохранённой копии. Страницы, не найденные обходом, удаляются, только если
+ * все страницы загрузились и лимиты обхода не отбросили ни одного адреса. Очередь и обработанные адреса записываются
+ * в {@link CrawlCheckpoint}; страница считается обработанной после записи в базу.
+ */
+@Slf4j
 public class SiteParser extends RecursiveAction {
-    private final String url;
-    private final TreeSet<String> hrefList;
-    private SiteEntity site;
-    private final PageRepository pageRepository;
-    private final SiteRepository siteRepository;
-    private final LemmaRepository lemmaRepository;
-    private final SearchIndexRepository searchIndexRepository;
-    private Document document;
-
-    public SiteParser(String url,
-                      TreeSet<String> hrefList,
+    private final UrlFrontier frontier;
+    private final SiteEntity site;
+    private final PageWritePipeline writePipeline;
+    private final PolitenessScheduler politeness;
+    private final PageFetcher fetcher;
+    private final Lemmatisation lemmatisation;
+    private final boolean storePositions;
+    private final KnownPages knownPages;
+    private final CrawlCheckpoint checkpoint;
+    private final LongAdder unchanged = new LongAdder();
+    private volatile boolean cancelled;
+    private volatile boolean completed;
+    /**
+     * Хотя бы одна страница не загрузилась или не разобралась, и её ссылки могли остаться не найденными.
+     */
+    private volatile boolean incomplete;
+    private volatile CompletableFuture<Void> currentLevel;
+
+    public SiteParser(UrlFrontier frontier,
+                      KnownPages knownPages,
+                      CrawlCheckpoint checkpoint,
                       SiteEntity site,
-                      PageRepository pageRepository,
-                      SiteRepository siteRepository,
-                      LemmaRepository lemmaRepository,
-                      SearchIndexRepository searchIndexRepository) {
-        this.url = url;
-        this.hrefList = hrefList;
+                      PageWritePipeline writePipeline,
+                      PolitenessScheduler politeness,
+                      PageFetcher fetcher,
+                      Lemmatisation lemmatisation,
+                      boolean storePositions) {
+        this.frontier = frontier;
+        this.knownPages = knownPages;
+        this.checkpoint = checkpoint;
         this.site = site;
-        this.pageRepository = pageRepository;
-        this.siteRepository = siteRepository;
-        this.lemmaRepository = lemmaRepository;
-        this.searchIndexRepository = searchIndexRepository;
+        this.writePipeline = writePipeline;
+        this.politeness = politeness;
+        this.fetcher = fetcher;
+        this.lemmatisation = lemmatisation;
+        this.storePositions = storePositions;
     }
 
     @Override
-    @SneakyThrows
     protected void compute() {
+        ForkJoinPool pool = getPool();
+        for (int depth = frontier.firstLevel(); depth <= frontier.getMaxDepth() && !cancelled; depth++) {
+            List<String> level = frontier.takeLevel(depth);
+            if (level.isEmpty()) {
+                break;
+            }
+            CompletableFuture<?>[] pages = new CompletableFuture<?>[level.size()];
+            for (int i = 0; i < level.size(); i++) {
+                String url = level.get(i);
+                int pageDepth = depth;
+                long delay = politeness.reserve(url);
+                PageValidatorsView known = knownPages.take(url);
+                pages[i] = CompletableFuture.supplyAsync(() -> url,
+                                CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS, pool))
+                        .thenCompose(u -> cancelled
+                                ? CompletableFuture.completedFuture(null)
+                                : fetcher.fetch(u, conditionalHeaders(known)))
+                        .handleAsync((page, error) -> {
+                            if (error != null) {
+                                fetchFailed(url, known, pageDepth, error);
+                            } else {
+                                parsePage(page, known, pageDepth);
+                            }
+                            return null;
+                        }, pool)
+                        .exceptionally(e -> {
+                            incomplete = true;
+                            System.out.println(url + " can't be parsed: " + cause(e));
+                            checkpoint.done(url);
+                            return null;
+                        });
+            }
+            CompletableFuture<Void> levelPages = CompletableFuture.allOf(pages);
+            currentLevel = levelPages;
+            if (cancelled) {
+                levelPages.cancel(false);
+            }
+            try {
+                levelPages.join();
+            } catch (CancellationException e) {
+                break;
+            } finally {
+                checkpoint.flush();
+            }
+        }
+        if (!cancelled) {
+            if (incomplete || frontier.isTruncated()) {
+                log.info("Обход {} неполный (ошибки загрузки или лимиты обхода), страницы, не найденные обходом, "
+                        + "не удаляются: {}", site.getUrl(), knownPages.size());
+            } else {
+                removeMissingPages();
+            }
+            completed = true;
+        }
+        System.out.println("Обход " + site.getUrl() + " завершён, страниц: " + frontier.getVisitedCount()
+                + ", без изменений: " + unchanged);
+    }
 
-        Thread.sleep(250);
-        Connection connection = Jsoup.connect(url)
-                .ignoreContentType(true)
-                .userAgent(new UserAgent().getUserAgent())
-                .referrer("https://www.google.com");
+    /**
+     * Останавливает обход: новые страницы не загружаются, ожидание текущего уровня прерывается.
+     */
+    public void cancel() {
+        cancelled = true;
+        CompletableFuture<Void> level = currentLevel;
+        if (level != null) {
+            level.cancel(false);
+        }
+    }
 
-        try {
-            document = connection.execute().parse();
-            PageEntity page = new PageEntity();
-            page.setSiteID(site);
-            page.setPagePath(url);
-            page.setPageContent(String.valueOf(document));
-            page.setPageCode(connection.response().statusCode());
-            pageRepository.save(page);
-
-            Lemmatisation lemmatisation = new Lemmatisation();
-            Map<String, Integer> lemmas = lemmatisation.getLemmas(document.text());
-            List<LemmaEntity> lemmaEntityList = new ArrayList<>();
-            List<SearchIndex> searchIndexList = new ArrayList<>();
-
-            for(Map.Entry<String, Integer> lemma:lemmas.entrySet()){
-
-                LemmaEntity lemmaEntity = new LemmaEntity();
-                lemmaEntity.setSiteID(site);
-                lemmaEntity.setLemma(lemma.getKey());
-                lemmaEntity.setFrequency(lemma.getValue());
-                lemmaEntityList.add(lemmaEntity);
-
-                SearchIndex searchIndex = new SearchIndex();
-                searchIndex.setPageID(page);
-                searchIndex.setLemmaID(lemmaEntity);
-                searchIndex.setSearchRank(lemma.getValue());
-                searchIndexList.add(searchIndex);
+    /**
+     * @return true, если обход дошёл до конца и не был остановлен
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public int getVisitedCount() {
+        return frontier.getVisitedCount();
+    }
+
+    private static Map<String, String> conditionalHeaders(PageValidatorsView known) {
+        if (known == null) {
+            return Map.of();
+        }
+        Map<String, String> headers = new HashMap<>();
+        if (known.getEtag() != null) {
+            headers.put("If-None-Match", known.getEtag());
+        }
+        if (known.getLastModified() != null) {
+            headers.put("If-Modified-Since", known.getLastModified());
+        }
+        return headers;
+    }
+
+    private void removeMissingPages() {
+        for (PageValidatorsView page : knownPages.remaining()) {
+            try {
+                writePipeline.submit(ParsedPage.removal(site.getSiteID(), page.getPageId()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
             }
-            lemmaRepository.saveAll(lemmaEntityList);
-            searchIndexRepository.saveAll(searchIndexList);
         }
-        catch (HttpStatusException e) {
-            System.out.println(url + " can't be parsed");
+    }
+
+    /**
+     * Страница не загрузилась: обход считается неполным, а ссылки сохранённой страницы всё равно
+     * ставятся в очередь, чтобы страницы под ней были обойдены.
+     */
+    private void fetchFailed(String url, PageValidatorsView known, int depth, Throwable error) {
+        incomplete = true;
+        System.out.println(url + " can't be loaded: " + cause(error));
+        if (known != null && !cancelled) {
+            offerLinks(storedPage(known, url).getLinks(), depth);
         }
+        checkpoint.done(url);
+    }
+
+    private ExtractedPage storedPage(PageValidatorsView known, String baseUrl) {
+        String content = knownPages.content(known.getPageId());
+        return HtmlTextExtractor.extract(content == null ? "" : content, baseUrl);
+    }
 
-            List<String> links = collectLinks(url);
-            List<SiteParser> tasks = new ArrayList<>();
-            for (String link : links)
-            {
-                if (!hrefList.contains(link) && !links.isEmpty())
-                {
-                    SiteParser siteParser = new SiteParser(
-                            link,
-                            hrefList,
-                            site,
-                            pageRepository,
-                            siteRepository,
-                            lemmaRepository,
-                            searchIndexRepository);
-                    siteParser.fork();
-                    hrefList.add(link);
-                    System.out.println("parsing " + link);
-                    tasks.add(siteParser);
+    private static Throwable cause(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private void parsePage(FetchedPage page, PageValidatorsView known, int depth) {
+        if (page == null || cancelled) {
+            return;
+        }
+        String url = page.getUrl();
+        ExtractedPage extracted;
+        ParsedPage submitted = null;
+        try {
+            if (known != null && page.isNotModified()) {
+                unchanged.increment();
+                extracted = storedPage(known, page.getBaseUrl());
+            } else if (page.isError()) {
+                System.out.println(url + " can't be parsed: " + page.getCode());
+                if (page.isGone()) {
+                    if (known != null) {
+                        writePipeline.submit(ParsedPage.removal(site.getSiteID(), known.getPageId()));
+                    }
+                    checkpoint.done(url);
+                    return;
+                }
+                incomplete = true;
+                if (known == null) {
+                    checkpoint.done(url);
+                    return;
+                }
+                extracted = storedPage(known, page.getBaseUrl());
+            } else {
+                String contentHash = page.contentHash();
+                String html = page.html();
+                extracted = HtmlTextExtractor.extract(html, page.getBaseUrl());
+                if (known != null && contentHash.equals(known.getContentHash())) {
+                    unchanged.increment();
+                } else {
+                    Map<String, byte[]> positions = storePositions ? new HashMap<>() : null;
+                    Map<String, Integer> lemmas = storePositions
+                            ? lemmatisation.getLemmas(extracted.getText(), positions)
+                            : lemmatisation.getLemmas(extracted.getText());
+                    ParsedPage parsedPage = new ParsedPage(site.getSiteID(), url, page.getCode(),
+                            html, extracted.getTitle(), lemmas);
+                    parsedPage.setText(extracted.getText());
+                    parsedPage.setPositions(positions);
+                    parsedPage.setEtag(page.getEtag());
+                    parsedPage.setLastModified(page.getLastModified());
+                    parsedPage.setContentHash(contentHash);
+                    parsedPage.setReplacedPageId(known == null ? 0 : known.getPageId());
+                    writePipeline.submit(parsedPage);
+                    submitted = parsedPage;
                 }
             }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        catch (RuntimeException e) {
+            incomplete = true;
+            System.out.println(url + " can't be parsed: " + e);
+            return;
+        }
+
+        offerLinks(extracted.getLinks(), depth);
+        if (submitted == null) {
+            checkpoint.done(url);
+        } else {
+            submitted.getWritten().thenRun(() -> checkpoint.done(url));
+        }
+    }
 
-            for (SiteParser task : tasks)
-            {
-                task.join();
+    private void offerLinks(List<String> links, int depth) {
+        for (String link : filterLinks(links)) {
+            if (frontier.offer(link, depth + 1)) {
+                System.out.println("parsing " + link);
             }
+        }
     }
 
-    @SneakyThrows
-    public synchronized List<String> collectLinks(String url) {
+    private static List<String> filterLinks(List<String> links) {
         List<String> linkList = new ArrayList<>();
-        linkList.add(url);
-
-        Elements links = document.select("a[href]");
 
-        for (Element element : links) {
-            String link = element.attr("abs:href");
-
-            if (!link.startsWith(url)) {
-                continue;
-            }
+        for (String link : links) {
             if (link.contains("#")) {
                 continue;
             }
@@ -141,9 +286,6 @@ public class SiteParser extends RecursiveAction {
                     link.contains("?ref")) {
                 continue;
             }
-            if (linkList.contains(link)) {
-                continue;
-            }
             linkList.add(link);
         }
         return linkList;
@@ -0,0 +1,75 @@
+package searchengine.services.parsing;
+
+import java.util.Arrays;
+
+/**
+ * Позиции вхождений леммы в тексте страницы: порядковый номер слова и смещение его начала в тексте.
+ * Хранятся парами разностей с предыдущим вхождением в формате varint, поэтому обычно занимают
+ * два-три байта на вхождение.
+ */
+public final class TokenPositions {
+
+    private TokenPositions() {
+    }
+
+    /**
+     * @return пары (номер слова, смещение) подряд: [номер0, смещение0, номер1, смещение1, ...]
+     */
+    public static int[] decode(byte[] data) {
+        int[] result = new int[16];
+        int size = 0;
+        int ordinal = 0;
+        int start = 0;
+        int pos = 0;
+        while (pos < data.length) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            if (size == result.length) {
+                result = Arrays.copyOf(result, size * 2);
+            }
+            if ((size & 1) == 0) {
+                ordinal += value;
+                result[size++] = ordinal;
+            } else {
+                start += value;
+                result[size++] = start;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    static final class Writer {
+        private byte[] bytes = new byte[8];
+        private int size;
+        private int lastOrdinal;
+        private int lastStart;
+
+        void add(int ordinal, int start) {
+            writeVarInt(ordinal - lastOrdinal);
+            writeVarInt(start - lastStart);
+            lastOrdinal = ordinal;
+            lastStart = start;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void writeVarInt(int value) {
+            if (size + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+    }
+}
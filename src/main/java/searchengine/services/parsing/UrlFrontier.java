@@ -0,0 +1,191 @@
+package searchengine.services.parsing;
+
+import searchengine.config.CrawlerSettings;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Граница обхода сайта: множество посещённых адресов и очереди адресов по глубине.
+ * Адреса нормализуются и хранятся в множестве посещённых как 64-битные отпечатки,
+ * поэтому повторная загрузка страницы невозможна даже при одновременном обнаружении
+ * ссылки несколькими потоками. Обход идёт в ширину: уровень глубины забирается целиком,
+ * число страниц на уровне и глубина ограничены настройками crawler-settings.
+ */
+public class UrlFrontier {
+    private final String siteUrl;
+    private final String sitePrefix;
+    private final int maxDepth;
+    private final int maxPagesPerDepth;
+    private final FingerprintSet visited;
+    private final List<Queue<String>> levels;
+    private final AtomicIntegerArray levelSizes;
+    private volatile CrawlCheckpoint checkpoint;
+    private volatile boolean truncated;
+
+    public UrlFrontier(String siteUrl, CrawlerSettings settings) {
+        this.siteUrl = normalize(siteUrl);
+        this.sitePrefix = this.siteUrl.endsWith("/") ? this.siteUrl : this.siteUrl + "/";
+        this.maxDepth = settings.getMaxDepth();
+        this.maxPagesPerDepth = settings.getMaxPagesPerDepth();
+        this.visited = new FingerprintSet(settings.getMaxPages());
+        this.levels = new ArrayList<>(maxDepth + 1);
+        for (int depth = 0; depth <= maxDepth; depth++) {
+            levels.add(new ConcurrentLinkedQueue<>());
+        }
+        this.levelSizes = new AtomicIntegerArray(maxDepth + 1);
+    }
+
+    /**
+     * Добавляет адрес в очередь уровня depth, если он принадлежит сайту, ещё не встречался
+     * и лимиты обхода не исчерпаны. Адрес сайта, отброшенный из-за лимитов, отмечает обход усечённым.
+     *
+     * @return true, если адрес поставлен в очередь
+     */
+    public boolean offer(String url, int depth) {
+        String normalized = normalize(url);
+        if (!normalized.equals(siteUrl) && !normalized.startsWith(sitePrefix)) {
+            return false;
+        }
+        long fingerprint = fingerprint(normalized);
+        if (depth > maxDepth || levelSizes.get(depth) >= maxPagesPerDepth || !visited.add(fingerprint)) {
+            if (!visited.contains(fingerprint)) {
+                truncated = true;
+            }
+            return false;
+        }
+        if (levelSizes.incrementAndGet(depth) > maxPagesPerDepth) {
+            truncated = true;
+            return false;
+        }
+        levels.get(depth).add(url);
+        CrawlCheckpoint current = checkpoint;
+        if (current != null) {
+            current.queued(url, depth);
+        }
+        return true;
+    }
+
+    /**
+     * Восстанавливает состояние из контрольной точки: обработанные адреса только отмечаются
+     * посещёнными, необработанные снова ставятся в очередь своего уровня. Новые адреса
+     * после этого записываются в контрольную точку.
+     */
+    public void restore(CrawlCheckpoint checkpoint) {
+        for (String url : checkpoint.getCompleted()) {
+            visited.add(fingerprint(normalize(url)));
+        }
+        checkpoint.getPending().forEach((url, depth) -> {
+            if (depth > maxDepth) {
+                truncated = true;
+            } else if (visited.add(fingerprint(normalize(url)))) {
+                levelSizes.incrementAndGet(depth);
+                levels.get(depth).add(url);
+            }
+        });
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * @return наименьшая глубина с адресами в очереди или maxDepth + 1, если очередь пуста
+     */
+    public int firstLevel() {
+        for (int depth = 0; depth <= maxDepth; depth++) {
+            if (!levels.get(depth).isEmpty()) {
+                return depth;
+            }
+        }
+        return maxDepth + 1;
+    }
+
+    /**
+     * Забирает все адреса уровня depth.
+     */
+    public List<String> takeLevel(int depth) {
+        List<String> urls = new ArrayList<>();
+        if (depth > maxDepth) {
+            return urls;
+        }
+        Queue<String> level = levels.get(depth);
+        for (String url = level.poll(); url != null; url = level.poll()) {
+            urls.add(url);
+        }
+        return urls;
+    }
+
+    public boolean isVisited(String url) {
+        return visited.contains(fingerprint(normalize(url)));
+    }
+
+    public int getVisitedCount() {
+        return visited.size();
+    }
+
+    /**
+     * @return true, если лимиты max-pages, max-depth или max-pages-per-depth отбросили хотя бы один адрес сайта
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Приводит адрес к единому виду: схема и хост в нижнем регистре, без порта по умолчанию,
+     * фрагмента и завершающей косой черты.
+     */
+    static String normalize(String url) {
+        try {
+            URI uri = new URI(url.trim()).normalize();
+            if (uri.getScheme() == null || uri.getHost() == null) {
+                return url;
+            }
+            String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+            int port = uri.getPort();
+            if (scheme.equals("http") && port == 80 || scheme.equals("https") && port == 443) {
+                port = -1;
+            }
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            if (path.length() > 1 && path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            StringBuilder builder = new StringBuilder(url.length())
+                    .append(scheme).append("://").append(uri.getHost().toLowerCase(Locale.ROOT));
+            if (port != -1) {
+                builder.append(':').append(port);
+            }
+            builder.append(path);
+            if (uri.getRawQuery() != null) {
+                builder.append('?').append(uri.getRawQuery());
+            }
+            return builder.toString();
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
+    /**
+     * 64-битный отпечаток строки: FNV-1a с финальным перемешиванием из MurmurHash3.
+     */
+    static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb3fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,200 @@
+package searchengine.services.parsing;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Ограниченный кэш словоформа -> нормальная форма с вытеснением в духе W-TinyLFU.
+ * Кэш разбит на сегменты со своей блокировкой. В сегменте новые словоформы попадают в маленькое
+ * LRU-окно (1% ёмкости); вытесняемая из окна словоформа попадает в основную LRU-область,
+ * только если по счётчику частот (count-min sketch с периодическим старением) встречалась чаще,
+ * чем кандидат на вытеснение из основной области. Так редкие слова не вытесняют частые.
+ */
+final class WordFormCache {
+    /**
+     * Значение для слов, которые не учитываются (служебные части речи, слова не из словаря).
+     */
+    private static final String NONE = new String("");
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    WordFormCache(int capacity) {
+        int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(64, capacity / 1024)));
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(Math.max(2, capacity / segmentCount));
+        }
+    }
+
+    /**
+     * @param loader вычисляет нормальную форму при промахе; может вернуть null
+     */
+    String get(String word, Function<String, String> loader) {
+        int hash = spread(word.hashCode());
+        Segment segment = segments[hash & (segments.length - 1)];
+        String cached = segment.get(word, hash);
+        if (cached != null) {
+            hits.increment();
+            return cached == NONE ? null : cached;
+        }
+        misses.increment();
+        String loaded = loader.apply(word);
+        segment.put(word, hash, loaded == null ? NONE : loaded);
+        return loaded;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<String, String> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, String> main = new LinkedHashMap<>(16, 0.75f, true);
+        private final int windowCapacity;
+        private final int mainCapacity;
+        private final FrequencySketch sketch;
+
+        private Segment(int capacity) {
+            this.windowCapacity = Math.max(1, capacity / 100);
+            this.mainCapacity = Math.max(1, capacity - windowCapacity);
+            this.sketch = new FrequencySketch(capacity);
+        }
+
+        private String get(String word, int hash) {
+            lock.lock();
+            try {
+                sketch.increment(hash);
+                String value = window.get(word);
+                return value != null ? value : main.get(word);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void put(String word, int hash, String value) {
+            lock.lock();
+            try {
+                if (window.containsKey(word) || main.containsKey(word)) {
+                    return;
+                }
+                window.put(word, value);
+                if (window.size() <= windowCapacity) {
+                    return;
+                }
+                Iterator<Map.Entry<String, String>> windowEldest = window.entrySet().iterator();
+                Map.Entry<String, String> candidate = windowEldest.next();
+                windowEldest.remove();
+                if (main.size() < mainCapacity) {
+                    main.put(candidate.getKey(), candidate.getValue());
+                    return;
+                }
+                Iterator<Map.Entry<String, String>> mainEldest = main.entrySet().iterator();
+                Map.Entry<String, String> victim = mainEldest.next();
+                if (sketch.frequency(spread(candidate.getKey().hashCode()))
+                        > sketch.frequency(spread(victim.getKey().hashCode()))) {
+                    mainEldest.remove();
+                    main.put(candidate.getKey(), candidate.getValue());
+                }
+                evictions.increment();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                return window.size() + main.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Count-min sketch из четырёх строк 8-битных счётчиков. После 10 * ёмкость увеличений
+     * все счётчики делятся пополам, чтобы частоты отражали недавнюю историю.
+     */
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = {0x97CB3127, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] rows = new byte[4][];
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1);
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = new byte[width];
+            }
+            this.mask = width - 1;
+            this.sampleSize = 10 * Math.max(16, capacity);
+        }
+
+        private void increment(int hash) {
+            for (int i = 0; i < rows.length; i++) {
+                int index = index(hash, i);
+                if (rows[i][index] != Byte.MAX_VALUE) {
+                    rows[i][index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                for (byte[] row : rows) {
+                    for (int j = 0; j < row.length; j++) {
+                        row[j] = (byte) (row[j] >> 1);
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        private int frequency(int hash) {
+            int frequency = Byte.MAX_VALUE;
+            for (int i = 0; i < rows.length; i++) {
+                frequency = Math.min(frequency, rows[i][index(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private int index(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) & 3];
+            return (h ^ (h >>> 15)) & mask;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package searchengine.services.parsing;
+
+/**
+ * Разбиение текста на слова без промежуточных строк. Слово - непрерывная последовательность
+ * непробельных символов, из которой оставлены буквы в нижнем регистре того алфавита (русского
+ * или латинского), которым слово начинается; ё заменяется на е. Символы слова копируются
+ * в переиспользуемый буфер.
+ */
+public final class WordTokenizer {
+
+    public interface WordConsumer {
+        /**
+         * @param word   буфер с буквами слова; действителен только во время вызова
+         * @param length число букв
+         * @param start  начало слова в исходном тексте
+         * @param end    конец слова в исходном тексте (не включая)
+         */
+        void accept(char[] word, int length, int start, int end);
+    }
+
+    private static final int MAX_WORD_LENGTH = 64;
+
+    private WordTokenizer() {
+    }
+
+    public static void tokenize(CharSequence text, WordConsumer consumer) {
+        char[] buffer = new char[MAX_WORD_LENGTH];
+        int length = 0;
+        int start = -1;
+        boolean latin = false;
+        int textLength = text.length();
+        for (int i = 0; i < textLength; i++) {
+            char c = text.charAt(i);
+            if (isSeparator(c)) {
+                if (start >= 0 && length > 0 && length <= MAX_WORD_LENGTH) {
+                    consumer.accept(buffer, length, start, i);
+                }
+                start = -1;
+                length = 0;
+                continue;
+            }
+            if (start < 0) {
+                start = i;
+            }
+            char letter = toLower(c);
+            if (letter != 0 && length == 0) {
+                latin = isLatin(letter);
+            }
+            if (letter != 0 && isLatin(letter) == latin) {
+                if (length < MAX_WORD_LENGTH) {
+                    buffer[length] = letter;
+                }
+                length++;
+            }
+        }
+        if (start >= 0 && length > 0 && length <= MAX_WORD_LENGTH) {
+            consumer.accept(buffer, length, start, textLength);
+        }
+    }
+
+    /**
+     * Конец слова, начинающегося в позиции start, - первый пробельный символ после него или конец текста.
+     */
+    public static int wordEnd(CharSequence text, int start) {
+        int end = start;
+        while (end < text.length() && !isSeparator(text.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static boolean isSeparator(char c) {
+        return Character.isWhitespace(c) || c == '\u00A0';
+    }
+
+    /**
+     * Слово, выделенное токенизатором, написано латиницей, если латинская его первая буква.
+     */
+    public static boolean isLatin(char letter) {
+        return letter >= 'a' && letter <= 'z';
+    }
+
+    /**
+     * @return буква в нижнем регистре или 0, если символ не русская и не латинская буква
+     */
+    static char toLower(char c) {
+        if (c >= 'а' && c <= 'я' || c >= 'a' && c <= 'z') {
+            return c;
+        }
+        if (c >= 'А' && c <= 'Я') {
+            return (char) (c + ('а' - 'А'));
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        if (c == 'ё' || c == 'Ё') {
+            return 'е';
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,75 @@
+package searchengine.services.searching;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.model.entities.PageEntity;
+import searchengine.model.repositories.PageRepository;
+import searchengine.model.repositories.PositionsView;
+import searchengine.model.repositories.SearchIndexRepository;
+import searchengine.services.parsing.HtmlTextExtractor;
+import searchengine.services.parsing.Lemmatisation;
+import searchengine.services.parsing.TokenPositions;
+
+import java.util.*;
+
+/**
+ * Позиции вхождений лемм запроса на страницах выдачи, сохранённые при обходе, - одним запросом на все страницы.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PagePositions {
+    private final SearchIndexRepository searchIndexRepository;
+    private final PageRepository pageRepository;
+    private final Lemmatisation lemmatisation;
+
+    /**
+     * @return позиции по страницам в виде {@link TokenPositions#decode}; страниц, проиндексированных
+     * без позиций, в результате нет
+     */
+    public Map<Integer, Map<String, int[]>> load(Collection<Integer> pageIds, Collection<String> lemmas) {
+        Map<Integer, Map<String, int[]>> result = new HashMap<>();
+        if (pageIds.isEmpty() || lemmas.isEmpty()) {
+            return result;
+        }
+        for (PositionsView view : searchIndexRepository.findPositions(pageIds, lemmas)) {
+            result.computeIfAbsent(view.getPageId(), id -> new HashMap<>())
+                    .put(view.getLemma(), TokenPositions.decode(view.getPositions()));
+        }
+        return result;
+    }
+
+    /**
+     * То же, но для страниц, проиндексированных без позиций, позиции вычисляются по сохранённому тексту.
+     */
+    public Map<Integer, Map<String, int[]>> loadOrCompute(Collection<Integer> pageIds, Collection<String> lemmas) {
+        Map<Integer, Map<String, int[]>> result = load(pageIds, lemmas);
+        List<Integer> missing = new ArrayList<>();
+        for (Integer pageId : pageIds) {
+            if (!result.containsKey(pageId)) {
+                missing.add(pageId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        log.debug("Позиции лемм вычисляются по тексту для страниц без позиций: {}", missing.size());
+        for (PageEntity page : pageRepository.findAllById(missing)) {
+            String text = page.getText() != null
+                    ? page.getText()
+                    : HtmlTextExtractor.extract(page.getPageContent(), page.getPagePath()).getText();
+            Map<String, byte[]> encoded = new HashMap<>();
+            lemmatisation.getLemmas(text, encoded);
+            Map<String, int[]> positions = new HashMap<>();
+            for (String lemma : lemmas) {
+                byte[] data = encoded.get(lemma);
+                if (data != null) {
+                    positions.put(lemma, TokenPositions.decode(data));
+                }
+            }
+            result.put(page.getPageID(), positions);
+        }
+        return result;
+    }
+}
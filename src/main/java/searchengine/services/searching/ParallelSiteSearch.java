@@ -0,0 +1,102 @@
+package searchengine.services.searching;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.model.entities.SiteEntity;
+import searchengine.services.index.InvertedIndex;
+import searchengine.services.index.LemmaStatistics;
+import searchengine.services.index.RelevanceScorer;
+import searchengine.services.index.TopKCollector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Параллельный поиск по нескольким сайтам на ограниченном пуле потоков.
+ * Каждый сайт отбирает свои лучшие страницы по леммам запроса без своих стоп-лемм, затем списки объединяются.
+ * Сайты, не уложившиеся в search-settings.timeout, пропускаются, а результат помечается неполным.
+ */
+@Slf4j
+@Component
+public class ParallelSiteSearch {
+    private final InvertedIndex invertedIndex;
+    private final LemmaStatistics lemmaStatistics;
+    private final SearchSettings searchSettings;
+    private final ExecutorService executor;
+
+    public ParallelSiteSearch(InvertedIndex invertedIndex, LemmaStatistics lemmaStatistics,
+                              SearchSettings searchSettings) {
+        this.invertedIndex = invertedIndex;
+        this.lemmaStatistics = lemmaStatistics;
+        this.searchSettings = searchSettings;
+        int threads = searchSettings.getSearchThreads();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 16), runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("site-search-" + thread.getId());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public RankedResults search(List<SiteEntity> sites,
+                                List<String> lemmas,
+                                RelevanceScorer scorer,
+                                int count,
+                                SearchCursor after) {
+        List<Callable<TopKCollector>> tasks = new ArrayList<>();
+        for (SiteEntity site : sites) {
+            tasks.add(() -> {
+                TopKCollector collector = newCollector(count, after);
+                invertedIndex.search(site.getSiteID(),
+                        lemmaStatistics.withoutStopLemmas(site.getSiteID(), lemmas), scorer, collector);
+                return collector;
+            });
+        }
+
+        TopKCollector merged = newCollector(count, after);
+        boolean partial = false;
+        List<Future<TopKCollector>> futures;
+        try {
+            futures = executor.invokeAll(tasks, searchSettings.getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.warn("Пул поиска переполнен, запрос отклонён");
+            return new RankedResults(merged, true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new RankedResults(merged, true);
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            Future<TopKCollector> future = futures.get(i);
+            try {
+                merged.addAll(future.get());
+            } catch (CancellationException e) {
+                log.warn("Поиск по сайту {} не уложился в {}", sites.get(i).getName(), searchSettings.getTimeout());
+                partial = true;
+            } catch (ExecutionException e) {
+                log.error("Ошибка поиска по сайту {}", sites.get(i).getName(), e.getCause());
+                partial = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                partial = true;
+            }
+        }
+        return new RankedResults(merged, partial);
+    }
+
+    private TopKCollector newCollector(int count, SearchCursor after) {
+        TopKCollector collector = new TopKCollector(count, searchSettings.getTotalHitsThreshold());
+        if (after != null) {
+            collector.searchAfter(after.getRelevance(), after.getPageId());
+        }
+        return collector;
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,170 @@
+package searchengine.services.searching;
+
+import searchengine.services.parsing.Lemmatisation;
+import searchengine.services.parsing.WordTokenizer;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Фраза запроса в кавычках. "купить ноутбук" - слова идут подряд (служебные слова между ними
+ * занимают свои места), "купить ноутбук"~3 - все леммы фразы встречаются в окне, которое длиннее
+ * фразы не более чем на три слова, в любом порядке. Проверяется по позициям вхождений лемм,
+ * сохранённым при обходе.
+ */
+public class PhraseQuery {
+    private static final Pattern PHRASE = Pattern.compile("\"([^\"]+)\"(?:~(\\d+))?");
+
+    private final String[] lemmas;
+    private final int[] offsets;
+    /**
+     * Допустимое число лишних слов; -1 для точной фразы.
+     */
+    private final int slop;
+
+    private PhraseQuery(String[] lemmas, int[] offsets, int slop) {
+        this.lemmas = lemmas;
+        this.offsets = offsets;
+        this.slop = slop;
+    }
+
+    /**
+     * Фразы запроса; фразы, в которых меньше двух учитываемых слов, не ограничивают выдачу и пропускаются.
+     */
+    public static List<PhraseQuery> parse(String query, Lemmatisation lemmatisation) {
+        List<PhraseQuery> phrases = new ArrayList<>();
+        Matcher matcher = PHRASE.matcher(query);
+        while (matcher.find()) {
+            List<String> lemmas = new ArrayList<>();
+            List<Integer> offsets = new ArrayList<>();
+            int[] ordinal = new int[1];
+            WordTokenizer.tokenize(matcher.group(1), (word, length, start, end) -> {
+                String lemma = lemmatisation.getLemma(new String(word, 0, length));
+                if (lemma != null) {
+                    lemmas.add(lemma);
+                    offsets.add(ordinal[0]);
+                }
+                ordinal[0]++;
+            });
+            if (lemmas.size() < 2) {
+                continue;
+            }
+            int slop = matcher.group(2) == null ? -1 : Integer.parseInt(matcher.group(2));
+            phrases.add(new PhraseQuery(lemmas.toArray(new String[0]),
+                    offsets.stream().mapToInt(Integer::intValue).toArray(), slop));
+        }
+        return phrases;
+    }
+
+    public List<String> getLemmas() {
+        return Arrays.asList(lemmas);
+    }
+
+    /**
+     * @param positions позиции лемм страницы в виде {@link searchengine.services.parsing.TokenPositions#decode}
+     */
+    public boolean matches(Map<String, int[]> positions) {
+        int[][] occurrences = new int[lemmas.length][];
+        for (int i = 0; i < lemmas.length; i++) {
+            occurrences[i] = positions.get(lemmas[i]);
+            if (occurrences[i] == null) {
+                return false;
+            }
+        }
+        return slop < 0 ? matchesExact(occurrences) : matchesWithin(occurrences);
+    }
+
+    private boolean matchesExact(int[][] occurrences) {
+        int rarest = 0;
+        for (int i = 1; i < occurrences.length; i++) {
+            if (occurrences[i].length < occurrences[rarest].length) {
+                rarest = i;
+            }
+        }
+        candidates:
+        for (int k = 0; k < occurrences[rarest].length; k += 2) {
+            int first = occurrences[rarest][k] - offsets[rarest];
+            for (int i = 0; i < occurrences.length; i++) {
+                if (i != rarest && !containsOrdinal(occurrences[i], first + offsets[i])) {
+                    continue candidates;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Скользящее окно по всем вхождениям лемм фразы в порядке следования в тексте.
+     */
+    private boolean matchesWithin(int[][] occurrences) {
+        Map<String, Integer> distinct = new HashMap<>();
+        int[] lemmaIndex = new int[lemmas.length];
+        for (int i = 0; i < lemmas.length; i++) {
+            lemmaIndex[i] = distinct.computeIfAbsent(lemmas[i], lemma -> distinct.size());
+        }
+        List<long[]> merged = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < occurrences.length; i++) {
+            if (!seen.add(lemmaIndex[i])) {
+                continue;
+            }
+            for (int k = 0; k < occurrences[i].length; k += 2) {
+                merged.add(new long[]{occurrences[i][k], lemmaIndex[i]});
+            }
+        }
+        merged.sort(Comparator.comparingLong(entry -> entry[0]));
+        int width = offsets[offsets.length - 1] + slop;
+        int[] counts = new int[distinct.size()];
+        int covered = 0;
+        int left = 0;
+        for (long[] entry : merged) {
+            if (counts[(int) entry[1]]++ == 0) {
+                covered++;
+            }
+            while (entry[0] - merged.get(left)[0] > width) {
+                if (--counts[(int) merged.get(left)[1]] == 0) {
+                    covered--;
+                }
+                left++;
+            }
+            if (covered == counts.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsOrdinal(int[] positions, int ordinal) {
+        int low = 0;
+        int high = positions.length / 2 - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = positions[middle * 2];
+            if (value < ordinal) {
+                low = middle + 1;
+            } else if (value > ordinal) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Фраза из лемм; пропущенные служебные слова обозначаются "_". Используется в ключе кэша выдачи.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < lemmas.length; i++) {
+            for (int gap = i == 0 ? 0 : offsets[i] - offsets[i - 1] - 1; gap > 0; gap--) {
+                sb.append("_ ");
+            }
+            sb.append(lemmas[i]).append(i + 1 < lemmas.length ? " " : "");
+        }
+        return sb.append("\"").append(slop < 0 ? "" : "~" + slop).toString();
+    }
+}
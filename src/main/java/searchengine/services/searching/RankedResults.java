@@ -0,0 +1,105 @@
+package searchengine.services.searching;
+
+import lombok.Getter;
+import searchengine.services.index.TopKCollector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * Упорядоченная по релевантности выдача по запросу: первые страницы результата и общее число совпадений.
+ * Хранится в кэше результатов, чтобы следующие страницы выдачи не требовали повторного поиска.
+ */
+public class RankedResults {
+    private final int[] pages;
+    private final float[] relevance;
+    @Getter
+    private final int totalHits;
+    @Getter
+    private final boolean totalHitsExact;
+    /**
+     * Часть сайтов не успела ответить, выдача неполная.
+     */
+    @Getter
+    private final boolean partial;
+
+    public RankedResults(TopKCollector collector, boolean partial) {
+        this.partial = partial;
+        LinkedHashMap<Integer, Float> topPages = collector.topPages();
+        pages = new int[topPages.size()];
+        relevance = new float[topPages.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Float> page : topPages.entrySet()) {
+            pages[i] = page.getKey();
+            relevance[i++] = page.getValue();
+        }
+        totalHits = collector.totalHits();
+        totalHitsExact = collector.isTotalHitsExact();
+    }
+
+    private RankedResults(int[] pages, float[] relevance, int totalHits, boolean totalHitsExact, boolean partial) {
+        this.pages = pages;
+        this.relevance = relevance;
+        this.totalHits = totalHits;
+        this.totalHitsExact = totalHitsExact;
+        this.partial = partial;
+    }
+
+    /**
+     * Выдача из страниц, прошедших проверку, в прежнем порядке. Число совпадений точное,
+     * только если исходная выдача содержала все совпадения.
+     */
+    public RankedResults filter(IntPredicate keep) {
+        int[] keptPages = new int[pages.length];
+        float[] keptRelevance = new float[pages.length];
+        int kept = 0;
+        for (int i = 0; i < pages.length; i++) {
+            if (keep.test(pages[i])) {
+                keptPages[kept] = pages[i];
+                keptRelevance[kept++] = relevance[i];
+            }
+        }
+        boolean exhaustive = totalHitsExact && pages.length >= totalHits;
+        return new RankedResults(Arrays.copyOf(keptPages, kept), Arrays.copyOf(keptRelevance, kept),
+                kept, exhaustive, partial);
+    }
+
+    public List<Integer> pageIds() {
+        List<Integer> pageIds = new ArrayList<>(pages.length);
+        for (int page : pages) {
+            pageIds.add(page);
+        }
+        return pageIds;
+    }
+
+    /**
+     * Содержит ли выдача первые count страниц результата (или весь результат).
+     */
+    public boolean covers(int count) {
+        return pages.length >= count || (totalHitsExact && pages.length >= totalHits);
+    }
+
+    public LinkedHashMap<Integer, Float> window(int offset, int limit) {
+        LinkedHashMap<Integer, Float> window = new LinkedHashMap<>();
+        for (int i = offset; i < Math.min(pages.length, offset + limit); i++) {
+            window.put(pages[i], relevance[i]);
+        }
+        return window;
+    }
+
+    /**
+     * Позиция страницы, следующей за курсором, или -1, если курсора нет в выдаче.
+     */
+    public int indexAfter(SearchCursor cursor) {
+        for (int i = 0; i < pages.length; i++) {
+            if (pages[i] == cursor.getPageId() && relevance[i] == cursor.getRelevance()) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,34 @@
+package searchengine.services.searching;
+
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Непрозрачный курсор постраничной выдачи: релевантность и идентификатор последней
+ * выданной страницы. Следующая страница выдачи начинается строго после этой пары.
+ */
+@Data
+public class SearchCursor {
+    private final float relevance;
+    private final int pageId;
+
+    public String encode() {
+        String value = Float.floatToIntBits(relevance) + ":" + pageId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException если курсор повреждён
+     */
+    public static SearchCursor decode(String cursor) {
+        String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int separator = value.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Некорректный курсор: " + cursor);
+        }
+        return new SearchCursor(Float.intBitsToFloat(Integer.parseInt(value.substring(0, separator))),
+                Integer.parseInt(value.substring(separator + 1)));
+    }
+}
@@ -0,0 +1,130 @@
+package searchengine.services.searching;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.dto.searching.SearchCacheStatistics;
+import searchengine.dto.searching.SearchResponse;
+import searchengine.services.index.InvertedIndex;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Кэш выдачи по запросам. Хранит упорядоченные результаты запроса (ключ - леммы, фразы и сайт),
+ * чтобы следующие страницы выдачи не требовали повторного поиска, и готовые ответы со сниппетами
+ * (ключ дополнен окном выдачи). Каждая запись помечена поколением индекса сайта, по которому искали,
+ * или всех сайтов; запись с устаревшим поколением удаляется при обращении. Записи живут не дольше
+ * search-settings.result-cache-ttl, при переполнении вытесняются давно не использованные.
+ */
+@Component
+public class SearchResultCache {
+    private final SearchSettings searchSettings;
+    private final InvertedIndex invertedIndex;
+    private final Map<String, Entry> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    private long expirations;
+
+    public SearchResultCache(SearchSettings searchSettings, InvertedIndex invertedIndex) {
+        this.searchSettings = searchSettings;
+        this.invertedIndex = invertedIndex;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > searchSettings.getResultCacheSize()) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Поколение индекса на момент начала поиска; результат поиска кладётся в кэш с этой отметкой,
+     * чтобы фиксация индекса во время поиска не оставила в кэше устаревший результат.
+     *
+     * @param siteId сайт поиска или null для поиска по всем сайтам
+     */
+    public Stamp stamp(Integer siteId) {
+        return new Stamp(siteId, generation(siteId));
+    }
+
+    public RankedResults getRanked(String key) {
+        return (RankedResults) get("ranked:" + key);
+    }
+
+    public void putRanked(String key, Stamp stamp, RankedResults ranked) {
+        put("ranked:" + key, stamp, ranked);
+    }
+
+    public SearchResponse getResponse(String key) {
+        return (SearchResponse) get("response:" + key);
+    }
+
+    public void putResponse(String key, Stamp stamp, SearchResponse response) {
+        put("response:" + key, stamp, response);
+    }
+
+    public synchronized SearchCacheStatistics statistics() {
+        long total = hits + misses;
+        return new SearchCacheStatistics(true, entries.size(), hits, misses,
+                total == 0 ? 0 : (double) hits / total,
+                evictions, invalidations, expirations);
+    }
+
+    private synchronized Object get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (entry.stamp.generation != generation(entry.stamp.siteId)) {
+            entries.remove(key);
+            invalidations++;
+            misses++;
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.createdAt > searchSettings.getResultCacheTtl().toMillis()) {
+            entries.remove(key);
+            expirations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    private synchronized void put(String key, Stamp stamp, Object value) {
+        if (stamp.generation == generation(stamp.siteId)) {
+            entries.put(key, new Entry(stamp, value));
+        }
+    }
+
+    private long generation(Integer siteId) {
+        return siteId == null ? invertedIndex.generation() : invertedIndex.generation(siteId);
+    }
+
+    public static final class Stamp {
+        private final Integer siteId;
+        private final long generation;
+
+        private Stamp(Integer siteId, long generation) {
+            this.siteId = siteId;
+            this.generation = generation;
+        }
+    }
+
+    private static final class Entry {
+        private final Stamp stamp;
+        private final Object value;
+        private final long createdAt = System.currentTimeMillis();
+
+        private Entry(Stamp stamp, Object value) {
+            this.stamp = stamp;
+            this.value = value;
+        }
+    }
+}
@@ -1,98 +1,185 @@
 package searchengine.services.searching;
 
 import lombok.RequiredArgsConstructor;
-import org.jsoup.Jsoup;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import searchengine.config.SearchSettings;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
+import searchengine.dto.searching.SearchCacheStatistics;
 import searchengine.dto.searching.SearchData;
 import searchengine.dto.searching.SearchResponse;
-import searchengine.model.entities.LemmaEntity;
 import searchengine.model.entities.PageEntity;
-import searchengine.model.entities.SearchIndex;
 import searchengine.model.entities.SiteEntity;
-import searchengine.model.repositories.LemmaRepository;
-import searchengine.model.repositories.SearchIndexRepository;
+import searchengine.model.repositories.PageRepository;
 import searchengine.model.repositories.SiteRepository;
 import searchengine.services.SearchingService;
+import searchengine.services.index.InvertedIndex;
+import searchengine.services.index.LemmaStatistics;
+import searchengine.services.index.PageMeta;
+import searchengine.services.parsing.HtmlTextExtractor;
+import searchengine.services.index.RelevanceScorer;
 import searchengine.services.parsing.Lemmatisation;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class SearchingServiceImpl implements SearchingService {
     private final SiteRepository siteRepository;
-    private final LemmaRepository lemmaRepository;
-    private final SearchIndexRepository indexRepository;
+    private final PageRepository pageRepository;
+    private final InvertedIndex invertedIndex;
+    private final LemmaStatistics lemmaStatistics;
     private final Lemmatisation lemmatisation;
     private final SnippetGenerator snippetGenerator;
     private final SitesList sitesList;
-    private final int removableLemmasPercent = 5;
+    private final SearchSettings searchSettings;
+    private final SearchResultCache resultCache;
+    private final Map<String, RelevanceScorer> scorers;
+    private final ParallelSiteSearch parallelSiteSearch;
+    private final PagePositions pagePositions;
 
     @Override
-    public SearchResponse getSearchResults(String query, String siteUrl, Integer offset, Integer limit) {
+    public SearchResponse getSearchResults(String query, String siteUrl, Integer offset, Integer limit, String cursor) {
         long start = System.currentTimeMillis();
-        System.out.println("Начало поиска: " + start);
+        log.debug("Начало поиска: {}", query);
         if (query.isEmpty()) {
             return new SearchResponse(false,
                     "Задан пустой поисковый запрос",
                     0,
                     new ArrayList<>());
         }
+        if (offset < 0 || limit <= 0) {
+            return new SearchResponse(false, "Некорректные параметры постраничной выдачи");
+        }
+        SearchCursor after;
+        try {
+            after = cursor == null || cursor.isEmpty() ? null : SearchCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return new SearchResponse(false, "Некорректный курсор выдачи");
+        }
 
         Set<String> lemmasFromQuery = generateLemmasFromQuery(query);
+        List<PhraseQuery> phrases = PhraseQuery.parse(query, lemmatisation);
+        String cacheKey = cacheKey(lemmasFromQuery, phrases, siteUrl);
+        String responseKey = cacheKey + "#" + (after == null ? "offset=" + offset : "cursor=" + cursor) + ":" + limit;
+        SearchResponse cachedResponse = resultCache.getResponse(responseKey);
+        if (cachedResponse != null) {
+            log.debug("Ответ из кэша выдачи, поиск занял {} мс", System.currentTimeMillis() - start);
+            return cachedResponse;
+        }
+        List<SiteEntity> sites = getSearchedSites(siteUrl);
+        SearchResultCache.Stamp stamp = resultCache.stamp(siteUrl == null || sites.isEmpty()
+                ? null : sites.get(0).getSiteID());
+        RankedResults ranked = resultCache.getRanked(cacheKey);
+        int from = after == null ? offset : (ranked == null ? -1 : ranked.indexAfter(after));
+
+        LinkedHashMap<Integer, Float> sortedPages;
+        if (from >= 0 && ranked != null && ranked.covers(from + limit)) {
+            log.debug("Страница выдачи из кэша результатов");
+            sortedPages = ranked.window(from, limit);
+        } else if (from < 0) {
+            log.debug("Продолжение выдачи после курсора");
+            ranked = rankPages(lemmasFromQuery, phrases, sites, limit, after);
+            sortedPages = ranked.window(0, limit);
+        } else {
+            ranked = rankPages(lemmasFromQuery, phrases, sites,
+                    Math.max(from + limit, searchSettings.getPrefetchResults()), null);
+            if (!ranked.isPartial()) {
+                resultCache.putRanked(cacheKey, stamp, ranked);
+            }
+            sortedPages = ranked.window(from, limit);
+        }
+
+        List<SearchData> generatedSearchDataList = generateSearchDataList(sortedPages, lemmasFromQuery);
+        boolean hasMore = sortedPages.size() == limit && (from < 0 || from + limit < ranked.getTotalHits());
+        SearchResponse searchResponse = response(generatedSearchDataList, ranked.getTotalHits(),
+                hasMore ? nextCursor(sortedPages) : null, ranked.isPartial());
+        if (!ranked.isPartial()) {
+            resultCache.putResponse(responseKey, stamp, searchResponse);
+        }
+        log.debug("Окончание поиска, поиск занял {} мс", System.currentTimeMillis() - start);
+        return searchResponse;
+    }
 
-        LinkedHashMap<String, Integer> lemmasSortedByFrequency = sortLemmasByFrequency(lemmasFromQuery);
+    @Override
+    public SearchCacheStatistics getCacheStatistics() {
+        return resultCache.statistics();
+    }
 
-        SearchResponse searchResponse = new SearchResponse();
+    private RankedResults rankPages(Set<String> lemmasFromQuery, List<PhraseQuery> phrases, List<SiteEntity> sites,
+                                   int count, SearchCursor after) {
+        LinkedHashMap<String, Integer> lemmasSortedByFrequency = sortLemmasByFrequency(lemmasFromQuery, sites);
+        RelevanceScorer scorer = relevanceScorer();
+        log.debug("Пересечение списков страниц по леммам с отбором лучших, сайтов: {}", sites.size());
+        RankedResults ranked = parallelSiteSearch.search(sites,
+                new ArrayList<>(lemmasSortedByFrequency.keySet()), scorer,
+                phrases.isEmpty() ? count : Math.max(count, searchSettings.getPhraseCandidates()), after);
+        if (!phrases.isEmpty()) {
+            ranked = filterPhrases(ranked, phrases);
+        }
+        log.debug("Найдено страниц: {}{}{}", ranked.getTotalHits(), ranked.isTotalHitsExact() ? "" : "+",
+                ranked.isPartial() ? " (неполная выдача)" : "");
+        return ranked;
+    }
 
-        LinkedHashMap<LemmaEntity, PageEntity> entitiesList = new LinkedHashMap<>();
+    /**
+     * Оставляет страницы, на которых по сохранённым позициям лемм встречаются все фразы запроса.
+     */
+    private RankedResults filterPhrases(RankedResults ranked, List<PhraseQuery> phrases) {
+        Set<String> phraseLemmas = new HashSet<>();
+        phrases.forEach(phrase -> phraseLemmas.addAll(phrase.getLemmas()));
+        Map<Integer, Map<String, int[]>> positions = pagePositions.loadOrCompute(ranked.pageIds(), phraseLemmas);
+        log.debug("Проверка фраз {} на страницах: {}", phrases, positions.size());
+        return ranked.filter(page -> {
+            Map<String, int[]> pagePositions = positions.getOrDefault(page, Map.of());
+            return phrases.stream().allMatch(phrase -> phrase.matches(pagePositions));
+        });
+    }
 
+    private List<SiteEntity> getSearchedSites(String siteUrl) {
+        List<SiteEntity> sites = new ArrayList<>();
         if (siteUrl != null) {
-            SiteEntity siteEntity = getSiteEntity(siteUrl);
-            entitiesList = getEntitiesList(lemmasFromQuery, siteEntity, lemmasSortedByFrequency);
-
-            LinkedHashMap<PageEntity, Integer> pagesByRelevance = countAbsoluteRank(entitiesList);
-            LinkedHashMap<PageEntity, Integer> sortedPages = sortPages(pagesByRelevance);
-            List<SearchData> generatedSearchDataList = generateSearchDataList(sortedPages, lemmasFromQuery, limit, offset);
-            searchResponse = response(generatedSearchDataList);
+            sites.add(getSiteEntity(siteUrl));
         } else {
             for (Site site : sitesList.getSites()) {
-                System.out.println(">>> Поиск на сайте: " + site.getName());
-                SiteEntity siteEntity = getSiteEntity(site.getUrl());
-                entitiesList.putAll(getEntitiesList(lemmasFromQuery, siteEntity, lemmasSortedByFrequency));
+                sites.add(getSiteEntity(site.getUrl()));
             }
-            LinkedHashMap<PageEntity, Integer> pagesByRelevance = countAbsoluteRank(entitiesList);
-            LinkedHashMap<PageEntity, Integer> sortedPages = sortPages(pagesByRelevance);
-            List<SearchData> generatedSearchDataList = generateSearchDataList(sortedPages, lemmasFromQuery, limit, offset);
-            searchResponse = response(generatedSearchDataList);
         }
-        System.out.println("Окончание поиска: " + (System.currentTimeMillis() - start));
-        return searchResponse;
+        sites.removeIf(Objects::isNull);
+        return sites;
     }
 
-    private LinkedHashMap<LemmaEntity, PageEntity> getEntitiesList(Set<String> lemmasFromQuery,
-                                                                   SiteEntity site,
-                                                                   LinkedHashMap<String, Integer> lemmasSortedByFrequency) {
-        List<PageEntity> pagesListFromFirstLemma =
-                getPageEntityListFromFirstLemma(lemmasSortedByFrequency, site);
+    private RelevanceScorer relevanceScorer() {
+        RelevanceScorer scorer = scorers.get(searchSettings.getScorer());
+        if (scorer == null) {
+            throw new IllegalStateException("Неизвестная функция релевантности: " + searchSettings.getScorer());
+        }
+        return scorer;
+    }
 
-        List<PageEntity> pagesFilteredByNextLemmas =
-                filterPagesByOtherLemmas(lemmasSortedByFrequency, pagesListFromFirstLemma);
+    private String cacheKey(Set<String> lemmasFromQuery, List<PhraseQuery> phrases, String siteUrl) {
+        return new TreeSet<>(lemmasFromQuery) + (phrases.isEmpty() ? "" : phrases.toString())
+                + "@" + (siteUrl == null ? "*" : siteUrl.toLowerCase());
+    }
 
-        LinkedHashMap<LemmaEntity, PageEntity> finalPagesAndLemma = compareFinalPagesAndLemmas(
-                pagesFilteredByNextLemmas, lemmasFromQuery);
-        return finalPagesAndLemma;
+    private String nextCursor(LinkedHashMap<Integer, Float> sortedPages) {
+        Map.Entry<Integer, Float> last = null;
+        for (Map.Entry<Integer, Float> page : sortedPages.entrySet()) {
+            last = page;
+        }
+        return last == null ? null : new SearchCursor(last.getValue(), last.getKey()).encode();
     }
 
-    private SearchResponse response(List<SearchData> searchData) {
+    private SearchResponse response(List<SearchData> searchData, int count, String cursor, boolean partial) {
         return SearchResponse.builder()
                 .result(true)
-                .count(searchData.size())
+                .count(count)
                 .data(searchData)
+                .cursor(cursor)
+                .partial(partial)
                 .build();
     }
 
@@ -112,36 +199,49 @@ public class SearchingServiceImpl implements SearchingService {
                 .build();
     }
 
-    private List<SearchData> generateSearchDataList(LinkedHashMap<PageEntity,
-            Integer> sortedPages,
-                                                    Set<String> lemmasFromQuery,
-                                                    int limit, int offset) {
-        System.out.println(">>> Формирование списка объектов SearchData");
+    private List<SearchData> generateSearchDataList(LinkedHashMap<Integer, Float> sortedPages,
+                                                    Set<String> lemmasFromQuery) {
+        log.debug("Формирование списка объектов SearchData");
+
+        List<Integer> pageIds = new ArrayList<>(sortedPages.keySet());
+        Map<Integer, PageEntity> pages = new HashMap<>();
+        pageRepository.findAllById(pageIds).forEach(page -> pages.put(page.getPageID(), page));
+        Map<Integer, Map<String, int[]>> positions = pagePositions.load(pageIds, lemmasFromQuery);
 
-        if (offset != 0 && sortedPages.size() > 0) {
-            sortedPages.remove(sortedPages.keySet().stream().findFirst().get());
+        List<PageEntity> found = new ArrayList<>();
+        for (Integer pageId : pageIds) {
+            if (pages.containsKey(pageId)) {
+                found.add(pages.get(pageId));
+            }
         }
+        List<String> snippets = snippetGenerator.generateAll(found, lemmasFromQuery, positions);
 
         List<SearchData> dataList = new ArrayList<>();
-        int count = 0;
-        for (Map.Entry<PageEntity, Integer> entry : sortedPages.entrySet()) {
-            if (count < limit) {
-                dataList.add(
-                        generateSearchData(
-                                entry.getKey().getSiteID().getUrl(),
-                                entry.getKey().getSiteID().getName(),
-                                shortThePath(entry.getKey(), entry.getKey().getSiteID()),
-                                Jsoup.parse(entry.getKey().getPageContent()).title(),
-                                getSnippet(entry.getKey(), lemmasFromQuery),
-                                entry.getValue())
-                );
-                count++;
-            }
+        for (int i = 0; i < found.size(); i++) {
+            PageEntity page = found.get(i);
+            int pageId = page.getPageID();
+            PageMeta meta = invertedIndex.pageMeta(page.getSiteID().getSiteID(), pageId);
+            String title = meta != null ? meta.getTitle() : pageTitle(page);
+            dataList.add(
+                    generateSearchData(
+                            page.getSiteID().getUrl(),
+                            page.getSiteID().getName(),
+                            shortThePath(page, page.getSiteID()),
+                            title,
+                            snippets.get(i),
+                            sortedPages.get(pageId))
+            );
         }
-        System.out.println("Сформировано " + dataList.size() + " объектов");
+        log.debug("Сформировано {} объектов", dataList.size());
         return dataList;
     }
 
+    private String pageTitle(PageEntity page) {
+        return page.getTitle() != null
+                ? page.getTitle()
+                : HtmlTextExtractor.extract(page.getPageContent(), page.getPagePath()).getTitle();
+    }
+
     private String shortThePath(PageEntity page, SiteEntity site) {
         String pageURL = page.getPagePath();
         String siteURL = site.getUrl();
@@ -152,31 +252,20 @@ public class SearchingServiceImpl implements SearchingService {
         return siteRepository.findSiteEntityByUrlIsIgnoreCase(siteURL);
     }
 
-    private String getSnippet(PageEntity page, Set<String> lemmas) {
-        List<String> queryList = new ArrayList<>(lemmas);
-        snippetGenerator.setText(page.getPageContent());
-        snippetGenerator.setQueryWords(queryList);
-        return snippetGenerator.generateSnippets();
-    }
-
     private Set<String> generateLemmasFromQuery(String query) {
         return lemmatisation.getLemmas(query).keySet();
     }
 
-    private LinkedHashMap<String, Integer> sortLemmasByFrequency(Set<String> lemmasList) {
-        System.out.println(">>> Сортировка лемм по частоте встречаемости");
+    private LinkedHashMap<String, Integer> sortLemmasByFrequency(Set<String> lemmasList, List<SiteEntity> sites) {
+        log.debug("Сортировка лемм по числу содержащих их страниц (статистика лемм в памяти)");
         LinkedHashMap<String, Integer> foundLemmas = new LinkedHashMap<>();
 
         for (String lemmaFromList : lemmasList) {
-            AtomicInteger frequency = new AtomicInteger();
-            List<LemmaEntity> lemmas = lemmaRepository.findLemmaEntitiesByLemmaEqualsIgnoreCase(lemmaFromList);
-
-            lemmas.forEach(lemma -> System.out.println("lemma " + lemma.getLemma() + " " + lemma.getFrequency()));
-            lemmas = removeMostFrequentlyLemmas(lemmas);
-
-            lemmas.forEach(lemmaEntity -> frequency.set(frequency.get() + lemmaEntity.getFrequency()));
-            foundLemmas.put(lemmaFromList, frequency.intValue());
-
+            int frequency = 0;
+            for (SiteEntity site : sites) {
+                frequency += lemmaStatistics.documentFrequency(site.getSiteID(), lemmaFromList);
+            }
+            foundLemmas.put(lemmaFromList, frequency);
         }
 
         LinkedHashMap<String, Integer> sortedMap = foundLemmas.entrySet().stream()
@@ -189,140 +278,7 @@ public class SearchingServiceImpl implements SearchingService {
                         },
                         LinkedHashMap::new
                 ));
-        sortedMap.forEach((s, integer) -> System.out.println(s + " " + integer));
+        log.debug("Леммы запроса по числу страниц: {}", sortedMap);
         return sortedMap;
     }
-
-    private ArrayList<LemmaEntity> removeMostFrequentlyLemmas(List<LemmaEntity> lemmas) {
-        System.out.println(">>> Исключение наиболее встречающихся лемм");
-        ArrayList<LemmaEntity> reList = new ArrayList<>(lemmas);
-        int removeCount = Math.round((float) lemmas.size() / 100 * removableLemmasPercent);
-        System.out.println("количество исключаемых лемм = " + removeCount);
-        LemmaEntity removable = new LemmaEntity();
-
-        for (int i = 0; i < removeCount; i++) {
-            int maxFrequency = 0;
-
-            for (LemmaEntity lemma : lemmas) {
-                if (lemma.getFrequency() > maxFrequency) {
-                    maxFrequency = lemma.getFrequency();
-                    removable = lemma;
-                }
-            }
-            reList.remove(removable);
-            System.out.println("исключена лемма: id: " +
-                    removable.getLemmaID() + " " +
-                    removable.getLemma() + " , frequency: " +
-                    removable.getFrequency());
-        }
-
-        return reList;
-    }
-
-    private List<PageEntity> getPageEntityListFromFirstLemma(LinkedHashMap<String, Integer> sortedLemmas, SiteEntity site) {
-        System.out.println(">>> Поиск страниц с самой редкой леммой из списка");
-        List<PageEntity> listFromFirstLemma = new ArrayList<>();
-        ArrayList<String> lemmaList = new ArrayList<>();
-
-        for (Map.Entry<String, Integer> entry : sortedLemmas.entrySet()) {
-            lemmaList.add(entry.getKey());
-        }
-        String rareLemma = lemmaList.get(0);
-        System.out.println("Самая редкая лемма: " + rareLemma);
-
-        ArrayList<SearchIndex> indexesFromFirstLemma =
-                indexRepository.findSearchIndicesByLemmaID_LemmaAndPageID_SiteID(rareLemma, site);
-        indexesFromFirstLemma.forEach(searchIndex -> listFromFirstLemma.add(searchIndex.getPageID()));
-
-        System.out.println("По первой лемме найдено страниц: " + listFromFirstLemma.size() + "\nсписок:");
-        listFromFirstLemma.forEach(page -> System.out.println(page.getPagePath()));
-        return listFromFirstLemma;
-    }
-
-    private List<PageEntity> filterPagesByOtherLemmas(LinkedHashMap<String, Integer> sortedLemmas,
-                                                      List<PageEntity> pagesListFromFirstLemma) {
-        System.out.println(">>> Исключение страниц, на которых отсутствуют остальные леммы");
-        List<PageEntity> refactoredList = new ArrayList<>(pagesListFromFirstLemma);
-
-        ArrayList<String> lemmaList = new ArrayList<>();
-        for (Map.Entry<String, Integer> entry : sortedLemmas.entrySet()) {
-            lemmaList.add(entry.getKey());
-        }
-        if (lemmaList.size() > 0) {
-            lemmaList.remove(0);
-
-            for (PageEntity page : pagesListFromFirstLemma) {
-                for (String lemma : lemmaList) {
-                    if (indexRepository.findSearchIndicesByPageIDAndLemmaID_Lemma(page, lemma).isEmpty()) {
-                        refactoredList.remove(page);
-                        System.out.println("Исключена страница: " + page.getPagePath());
-                    }
-                }
-            }
-        }
-
-        System.out.println("Страниц после проверки списка: " + refactoredList.size() + "\nсписок:");
-        refactoredList.forEach(pageEntity -> System.out.println(pageEntity.getPagePath()));
-        return refactoredList;
-    }
-
-    private LinkedHashMap<PageEntity, Integer> countAbsoluteRank(LinkedHashMap<LemmaEntity, PageEntity> lemmaAndPageList) {
-        System.out.println(">>> Расчет абсолютной релевантности");
-
-        LinkedHashMap<PageEntity, Integer> sortedList = new LinkedHashMap<>();
-
-        for (Map.Entry<LemmaEntity, PageEntity> entry : lemmaAndPageList.entrySet()) {
-            if (sortedList.containsKey(entry.getValue())) {
-                int rank = sortedList.get(entry.getValue());
-                sortedList.remove(entry.getValue());
-                sortedList.put(entry.getValue(), (entry.getKey().getFrequency() + rank));
-            } else {
-                sortedList.put(entry.getValue(), entry.getKey().getFrequency());
-            }
-        }
-        for (Map.Entry<PageEntity, Integer> entry : sortedList.entrySet()) {
-            System.out.println(entry.getKey().getPagePath() + " " + entry.getValue());
-        }
-        return sortedList;
-    }
-
-    private LinkedHashMap<LemmaEntity, PageEntity> compareFinalPagesAndLemmas(List<PageEntity> pagesFilteredByNextLemmas,
-                                                                              Set<String> lemmasFromQuery) {
-        System.out.println(">>> Группировка лемм и страниц");
-        LinkedHashMap<LemmaEntity, PageEntity> finalPagesAndLemmasList = new LinkedHashMap<>();
-
-        for (PageEntity page : pagesFilteredByNextLemmas) {
-            for (String lemma : lemmasFromQuery) {
-                indexRepository.findSearchIndicesByPageIDAndLemmaID_Lemma(page, lemma)
-                        .forEach(searchIndex ->
-                                finalPagesAndLemmasList.put(searchIndex.getLemmaID(), searchIndex.getPageID()));
-            }
-        }
-
-        for (Map.Entry<LemmaEntity, PageEntity> entry : finalPagesAndLemmasList.entrySet()) {
-            System.out.println(entry.getKey().getLemma() + " " + entry.getValue().getPagePath());
-        }
-        return finalPagesAndLemmasList;
-    }
-
-    private LinkedHashMap<PageEntity, Integer> sortPages(LinkedHashMap<PageEntity, Integer> finalPages) {
-        System.out.println(">>> Сортировка страниц к выдаче по релевантности");
-        LinkedHashMap<PageEntity, Integer> sortedList = new LinkedHashMap<>();
-
-        sortedList = finalPages.entrySet().stream()
-                .sorted(Comparator.comparingInt(e -> -e.getValue()))
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (a, b) -> {
-                            throw new AssertionError();
-                        },
-                        LinkedHashMap::new
-                ));
-
-        for (Map.Entry<PageEntity, Integer> entry : sortedList.entrySet()) {
-            System.out.println(entry.getKey().getPagePath() + " " + entry.getValue());
-        }
-        return sortedList;
-    }
-}
\ No newline at end of file
+}
@@ -1,185 +1,298 @@
 package searchengine.services.searching;
 
-import lombok.Getter;
-import lombok.RequiredArgsConstructor;
-import lombok.Setter;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Jsoup;
-import org.jsoup.safety.Safelist;
 import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.model.entities.PageEntity;
+import searchengine.services.parsing.HtmlTextExtractor;
 import searchengine.services.parsing.Lemmatisation;
+import searchengine.services.parsing.WordTokenizer;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
 
+/**
+ * Сниппет страницы. Вхождения лемм запроса берутся из позиций, сохранённых при обходе, а для страниц
+ * без позиций находятся за один проход по тексту: каждое слово лемматизируется один раз и ищется
+ * в хеш-таблице лемм запроса. Фрагменты выбираются скользящим окном: выше ценится окно, в котором
+ * больше разных лемм запроса, затем больше вхождений.
+ * Генератор не хранит состояния запроса, поэтому вызывается из разных поисков одновременно;
+ * сниппеты страниц одной выдачи строятся параллельно на ограниченном пуле.
+ */
 @Slf4j
 @Component
-@Getter
-@Setter
-@RequiredArgsConstructor
 public class SnippetGenerator {
-	private String text;
-	private List<String> queryWords;
+	private static final int MAX_FULL_SNIPPET_LENGTH = 1000;
+	private static final int FRAGMENT_LENGTH = 200;
+	private static final int DISTINCT_LEMMA_WEIGHT = 16;
+
 	private final Lemmatisation lemmatisation;
-	private final Integer SNIPPET_LENGTH = 100;
-	private final Integer MAX_FULL_SNIPPET_LENGTH = 1000;
-
-	public void setText(String text) {
-		this.text = Jsoup
-				.clean(text, Safelist.simpleText())
-				.replaceAll("[^А-Яа-яЁё\\d\\s,.!]+", " ")
-				.replaceAll("\\s+", " ");
-	}
+	private final ExecutorService executor;
 
-	public void setQueryWords(List<String> queryWords) {
-		this.queryWords = queryWords;
+	public SnippetGenerator(Lemmatisation lemmatisation, SearchSettings searchSettings) {
+		this.lemmatisation = lemmatisation;
+		int threads = Math.max(1, searchSettings.getSnippetThreads());
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(threads * 16), runnable -> {
+			Thread thread = new Thread(runnable);
+			thread.setName("snippet-" + thread.getId());
+			thread.setDaemon(true);
+			return thread;
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
 	}
 
-	public Map<Integer, String> getWordsAndPos( String text) {
-		Map<Integer, String> words = new HashMap<>();
-		int pos = 0;
-		int index = text.indexOf(" ");
-		while (index >= 0) {
-			String word = text.substring(pos, index);
-			word = word.replaceAll("\\P{L}+", "");
-			if (!word.isEmpty()) {
-				words.put(pos, word);
-			}
-			pos = index + 1;
-			index = text.indexOf(" ", pos);
+	/**
+	 * Сниппеты страниц выдачи в порядке страниц. Если пул занят, сниппет строит вызывающий поток.
+	 *
+	 * @param positions позиции лемм запроса по страницам ({@link PagePositions})
+	 */
+	public List<String> generateAll(List<PageEntity> pages, Collection<String> lemmas,
+									Map<Integer, Map<String, int[]>> positions) {
+		List<Future<String>> futures = new ArrayList<>(pages.size());
+		for (PageEntity page : pages) {
+			futures.add(executor.submit(() -> generate(page, lemmas, positions.get(page.getPageID()))));
 		}
-		String lastWord = text.substring(pos);
-		lastWord = lastWord.replaceAll("\\P{L}+", "");
-		if (!lastWord.isEmpty()) {
-			words.put(pos, lastWord);
+		List<String> snippets = new ArrayList<>(pages.size());
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				snippets.add(futures.get(i).get());
+			} catch (ExecutionException e) {
+				log.error("Ошибка построения сниппета страницы {}", pages.get(i).getPagePath(), e.getCause());
+				snippets.add("");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				futures.forEach(future -> future.cancel(true));
+				snippets.add("");
+			}
 		}
-		return words;
+		return snippets;
 	}
 
-	public Map<Integer, Set<String>> getLemmasAndPos() {
-		Map<Integer, String> words = getWordsAndPos(text);
-		Map<Integer, Set<String>> lemmas = new HashMap<>();
-		for (Map.Entry<Integer, String> entry : words.entrySet()) {
-			Set<String> lemmaSet = lemmatisation.getLemmas(entry.getValue()).keySet();
-			if (!lemmaSet.isEmpty()) {
-				lemmas.put(entry.getKey(), lemmaSet);
-			}
+	/**
+	 * Сниппет по видимому тексту страницы, извлечённому при обходе; сохранённые позиции указывают
+	 * смещения именно в нём, поэтому для страниц без сохранённого текста позиции не используются.
+	 */
+	public String generate(PageEntity page, Collection<String> lemmas, Map<String, int[]> positions) {
+		if (page.getText() != null) {
+			return generate(page.getText(), lemmas, positions);
 		}
-		return lemmas;
+		return generate(HtmlTextExtractor.extract(page.getPageContent(), page.getPagePath()).getText(), lemmas, null);
 	}
 
-	public Map<Integer, String> getDirtyFormsAndPos() {
-		Map<Integer, String> dirtyForms = new TreeMap<>();
-		Set<String> uniqueValues = new HashSet<>();
-		for (String queryWord : queryWords) {
-			for (Map.Entry<Integer, Set<String>> entry : getLemmasAndPos().entrySet()) {
-				if (entry.getValue().contains(queryWord.toLowerCase())) {
-					String word = getWordsAndPos(text).get(entry.getKey());
-					dirtyForms.put(entry.getKey(), word);
+	/**
+	 * @param positions позиции лемм запроса в тексте или null, тогда вхождения ищутся разбором текста
+	 */
+	public String generate(String text, Collection<String> lemmas, Map<String, int[]> positions) {
+		List<String> queryWords = new ArrayList<>(lemmas);
+		Hits hits = positions == null || positions.isEmpty()
+				? findHits(text, queryWords)
+				: hitsFromPositions(text, queryWords, positions);
+		List<int[]> fragments = new ArrayList<>();
+		boolean[] used = new boolean[hits.size];
+		int totalLength = 0;
+		while (totalLength < MAX_FULL_SNIPPET_LENGTH) {
+			int[] window = bestWindow(hits, used);
+			if (window == null) {
+				break;
+			}
+			int[] fragment = expand(text, hits.starts[window[0]], hits.ends[window[1]]);
+			for (int i = 0; i < hits.size; i++) {
+				if (hits.starts[i] >= fragment[0] && hits.ends[i] <= fragment[1]) {
+					used[i] = true;
 				}
 			}
+			fragments.add(fragment);
+			totalLength += fragment[1] - fragment[0];
 		}
+		return render(text, fragments, hits).toString();
+	}
 
-		for (Iterator<Map.Entry<Integer, String>> iterator = dirtyForms.entrySet().iterator(); iterator.hasNext();) {
-			Map.Entry<Integer, String> entry = iterator.next();
-			String value = entry.getValue();
-			if (uniqueValues.contains(value)) {
-				iterator.remove();
-			} else {
-				uniqueValues.add(value);
-			}
+	/**
+	 * Вхождения лемм запроса в порядке следования в тексте.
+	 */
+	private Hits findHits(String text, List<String> queryWords) {
+		Map<String, Integer> queryIndexes = new HashMap<>();
+		for (String queryWord : queryWords) {
+			queryIndexes.putIfAbsent(queryWord.toLowerCase(), queryIndexes.size());
 		}
-
-		return dirtyForms;
+		Map<String, Integer> formIndexes = new HashMap<>();
+		Hits hits = new Hits(queryIndexes.size());
+		WordTokenizer.tokenize(text, (word, length, start, end) -> {
+			String form = new String(word, 0, length);
+			Integer queryIndex = formIndexes.get(form);
+			if (queryIndex == null) {
+				String lemma = lemmatisation.getLemma(form);
+				queryIndex = lemma == null ? -1 : queryIndexes.getOrDefault(lemma, -1);
+				formIndexes.put(form, queryIndex);
+			}
+			if (queryIndex >= 0) {
+				hits.add(start, end, queryIndex);
+			}
+		});
+		return hits;
 	}
 
-	public String generateSnippets() {
-		Map<Integer, String> dirtyForms = getDirtyFormsAndPos();
-		List<Integer> sortedPositions = new ArrayList<>(dirtyForms.keySet());
-		Collections.sort(sortedPositions);
-
-		Map<String, Integer> markedSnipped = cuttingSnippetFromText(dirtyForms, sortedPositions);
-
-		Map<String, Integer> resultBoldedList = boldText(markedSnipped, new ArrayList<>(dirtyForms.values()));
-		StringBuilder sb = getResultSnippet(resultBoldedList);
-
-		return sb.toString();
+	/**
+	 * Вхождения лемм запроса по сохранённым позициям, без разбора текста.
+	 */
+	private Hits hitsFromPositions(String text, List<String> queryWords, Map<String, int[]> positions) {
+		Hits hits = new Hits(queryWords.size());
+		for (int query = 0; query < queryWords.size(); query++) {
+			int[] occurrences = positions.get(queryWords.get(query).toLowerCase());
+			if (occurrences == null) {
+				continue;
+			}
+			for (int k = 1; k < occurrences.length; k += 2) {
+				int start = occurrences[k];
+				if (start < text.length()) {
+					hits.add(start, WordTokenizer.wordEnd(text, start), query);
+				}
+			}
+		}
+		hits.sortByStart();
+		return hits;
 	}
 
-	private Map<String, Integer> cuttingSnippetFromText(Map<Integer, String> dirtyForms,  List<Integer> sortedPositions) {
-		String prevSnippet = "";
-		Map<String, Integer> markedSnipped = new HashMap<>();
-		int totalLength = 0;
-		int prevPos = -1;
-		int start = -1;
-
-		for (Integer pos : sortedPositions) {
-			if (prevPos == -1) {
-				start = getLastDotPositionInText(pos);
-			} else {
-				int gap = pos - prevPos - dirtyForms.get(prevPos).length();
-				if (gap > SNIPPET_LENGTH) {
-					start = getLastDotPositionInText(pos);
-					markedSnipped.put(prevSnippet, 0);
+	/**
+	 * Лучшее окно из ещё не показанных вхождений, помещающееся во фрагмент.
+	 *
+	 * @return номера первого и последнего вхождения окна или null, если вхождений не осталось
+	 */
+	private static int[] bestWindow(Hits hits, boolean[] used) {
+		int[] counts = new int[hits.queryCount];
+		int distinct = 0;
+		int inWindow = 0;
+		int bestScore = 0;
+		int[] best = null;
+		int left = 0;
+		for (int right = 0; right < hits.size; right++) {
+			if (used[right]) {
+				continue;
+			}
+			if (counts[hits.queries[right]]++ == 0) {
+				distinct++;
+			}
+			inWindow++;
+			while (hits.ends[right] - hits.starts[left] > FRAGMENT_LENGTH || used[left]) {
+				if (!used[left]) {
+					if (--counts[hits.queries[left]] == 0) {
+						distinct--;
+					}
+					inWindow--;
 				}
+				left++;
 			}
-
-			int end = Math.min(pos + dirtyForms.get(pos).length() + SNIPPET_LENGTH / 2, text.length());
-			prevSnippet = text.substring(start, end);
-			totalLength = totalLength + prevSnippet.length();
-
-			if (totalLength >= MAX_FULL_SNIPPET_LENGTH) {
-				break;
+			int score = distinct * DISTINCT_LEMMA_WEIGHT + inWindow;
+			if (score > bestScore) {
+				bestScore = score;
+				best = new int[]{left, right};
 			}
-			prevPos = pos;
 		}
+		return best;
+	}
 
-		if (!prevSnippet.isEmpty()) {
-			markedSnipped.put(prevSnippet, 0);
+	/**
+	 * Расширяет окно до длины фрагмента по границам слов; если рядом слева есть конец
+	 * предложения, фрагмент начинается со следующего предложения.
+	 */
+	private static int[] expand(String text, int start, int end) {
+		int pad = Math.max(0, FRAGMENT_LENGTH - (end - start)) / 2;
+		int left = Math.max(0, start - pad);
+		int dot = text.lastIndexOf('.', start - 1);
+		if (dot >= left) {
+			left = Math.min(start, dot + 2);
+		} else if (left > 0) {
+			int space = text.indexOf(' ', left);
+			left = space < 0 || space >= start ? start : space + 1;
+		}
+		int right = Math.min(text.length(), Math.max(end, left + FRAGMENT_LENGTH));
+		if (right < text.length()) {
+			int space = text.lastIndexOf(' ', right);
+			right = space < end ? end : space;
 		}
-		return markedSnipped;
+		return new int[]{left, right};
 	}
 
-	private StringBuilder getResultSnippet( Map<String, Integer> resultBoldedList) {
+	private static StringBuilder render(String text, List<int[]> fragments, Hits hits) {
 		StringBuilder sb = new StringBuilder();
-		for (String s : resultBoldedList.keySet()) {
-			sb.append("&#8195").append(s).append(" . . .").append("<br><br>");
-			if (sb.length() >= MAX_FULL_SNIPPET_LENGTH) {
-				break;
+		for (int[] fragment : fragments) {
+			sb.append("&#8195");
+			int pos = fragment[0];
+			for (int i = 0; i < hits.size; i++) {
+				if (hits.starts[i] < fragment[0] || hits.ends[i] > fragment[1]) {
+					continue;
+				}
+				appendEscaped(sb, text, pos, hits.starts[i]);
+				sb.append("<b>");
+				appendEscaped(sb, text, hits.starts[i], hits.ends[i]);
+				sb.append("</b>");
+				pos = hits.ends[i];
 			}
+			appendEscaped(sb, text, pos, fragment[1]);
+			sb.append(" . . .").append("<br><br>");
 		}
 		return sb;
 	}
 
-	private int getLastDotPositionInText(Integer pos) {
-		int lastDotPosition = text.substring(0, pos).lastIndexOf(".") + 2;
-		if (lastDotPosition >= 2 && (pos - lastDotPosition) <= SNIPPET_LENGTH) {
-			return lastDotPosition;
-		} else {
-			return pos;
+	private static void appendEscaped(StringBuilder sb, String text, int from, int to) {
+		for (int i = from; i < to; i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '<' -> sb.append("&lt;");
+				case '>' -> sb.append("&gt;");
+				case '&' -> sb.append("&amp;");
+				case '"' -> sb.append("&quot;");
+				default -> sb.append(c);
+			}
 		}
 	}
 
-	private Map<String, Integer> boldText(Map<String, Integer> source, List<String> words) {
-		Map<String, Integer> resultMap = new HashMap<>();
-		if (source == null)
-			return resultMap;
-		for (String key : source.keySet()) {
-			int count = 0;
-			for (String word : words) {
-				if (key.contains(word)) {
-					key = key.replaceAll(word, "<b>" + word + "</b>");
-					count++;
-				}
+	@PreDestroy
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	private static final class Hits {
+		private final int queryCount;
+		private int[] starts = new int[16];
+		private int[] ends = new int[16];
+		private int[] queries = new int[16];
+		private int size;
+
+		private Hits(int queryCount) {
+			this.queryCount = queryCount;
+		}
+
+		private void add(int start, int end, int query) {
+			if (size == starts.length) {
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+				queries = Arrays.copyOf(queries, size * 2);
 			}
-			resultMap.put(key, count);
+			starts[size] = start;
+			ends[size] = end;
+			queries[size] = query;
+			size++;
 		}
 
-		return resultMap.entrySet()
-				.stream()
-				.sorted(Collections.reverseOrder(Map.Entry.comparingByValue()))
-				.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue,
-						(oldValue, newValue) -> oldValue, LinkedHashMap::new));
+		private void sortByStart() {
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, Comparator.comparingInt(i -> starts[i]));
+			int[] sortedStarts = new int[size];
+			int[] sortedEnds = new int[size];
+			int[] sortedQueries = new int[size];
+			for (int i = 0; i < size; i++) {
+				sortedStarts[i] = starts[order[i]];
+				sortedEnds[i] = ends[order[i]];
+				sortedQueries[i] = queries[order[i]];
+			}
+			starts = sortedStarts;
+			ends = sortedEnds;
+			queries = sortedQueries;
+		}
 	}
 }
-
@@ -7,14 +7,13 @@ import searchengine.dto.statistics.DetailedStatisticsItem;
 import searchengine.dto.statistics.StatisticsData;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.dto.statistics.TotalStatistics;
-import searchengine.model.entities.LemmaEntity;
 import searchengine.model.entities.PageEntity;
 import searchengine.model.entities.SiteEntity;
 import searchengine.model.entities.Status;
-import searchengine.model.repositories.LemmaRepository;
 import searchengine.model.repositories.PageRepository;
 import searchengine.model.repositories.SiteRepository;
 import searchengine.services.StatisticsService;
+import searchengine.services.index.LemmaStatistics;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -29,17 +28,17 @@ public class StatisticsServiceImpl implements StatisticsService {
     private final SitesList sites;
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
+    private final LemmaStatistics lemmaStatistics;
     private boolean indexed;
 
     public StatisticsServiceImpl(SitesList sites,
                                  SiteRepository siteRepository,
                                  PageRepository pageRepository,
-                                 LemmaRepository lemmaRepository) {
+                                 LemmaStatistics lemmaStatistics) {
         this.sites = sites;
         this.siteRepository = siteRepository;
         this.pageRepository = pageRepository;
-        this.lemmaRepository = lemmaRepository;
+        this.lemmaStatistics = lemmaStatistics;
     }
 
     @Override
@@ -59,7 +58,7 @@ public class StatisticsServiceImpl implements StatisticsService {
             SiteEntity siteEntity =  getSiteFromRepository(site, siteRepository);
             if(siteEntity != null && siteEntity.getStatus().equals(Status.INDEXED)) {
                 int pages = countPages(siteEntity, pageRepository);
-                int lemmas = countLemmas(siteEntity, lemmaRepository);
+                int lemmas = lemmaStatistics.lemmaCount(siteEntity.getSiteID());
                 item.setPages(pages);
                 item.setLemmas(lemmas);
                 item.setStatus(String.valueOf(siteEntity.getStatus()));
@@ -93,17 +92,6 @@ public class StatisticsServiceImpl implements StatisticsService {
         return count;
     }
 
-    private int countLemmas(SiteEntity site, LemmaRepository lemmaRepository){
-        int count = 0;
-        List<LemmaEntity> lemmaEntityList = lemmaRepository.findAll();
-        for(LemmaEntity lemma:lemmaEntityList){
-            if(lemma.getSiteID().getSiteID() == site.getSiteID()){
-                count++;
-            }
-        }
-        return count;
-    }
-
     private SiteEntity getSiteFromRepository(Site site, SiteRepository siteRepository){
         List<SiteEntity> siteEntityList = siteRepository.findAll();
         SiteEntity resultEntity = null;
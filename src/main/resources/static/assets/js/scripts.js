@@ -1556,6 +1556,7 @@ var API = function(){
                         $('.SearchResult-footer').removeClass('SearchResult-footer_hide')
                         $('.SearchResult-footer button[data-send="search"]')
                             .data('sendoffset', data.offset + result.data.length)
+                            .data('sendcursor', result.cursor)
                             .data('searchquery', data.query)
                             .data('searchsite', data.site)
                             .data('sendlimit', data.limit);
@@ -1601,6 +1602,9 @@ var API = function(){
                             case 'INDEXING':
                                 statusClass = 'Statistics-status_pause';
                                 break;
+                            case 'RESUMABLE':
+                                statusClass = 'Statistics-status_pause';
+                                break;
                             
                         }
                         $('select[name="site"]').append('' +
@@ -1751,6 +1755,9 @@ var API = function(){
                                     offset: $this.data('sendoffset'),
                                     limit: $this.data('sendlimit')
                                 };
+                                if ($this.data('sendcursor')) {
+                                    data.cursor = $this.data('sendcursor');
+                                }
                             } else {
                                 data = {
                                     query: $this.find('[name="query"]').val(),
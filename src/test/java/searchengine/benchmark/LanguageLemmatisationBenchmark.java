@@ -0,0 +1,71 @@
+package searchengine.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import searchengine.config.MorphologySettings;
+import searchengine.services.parsing.HtmlTextExtractor;
+import searchengine.services.parsing.Lemmatisation;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность {@link Lemmatisation} на русском, английском и смешанном тексте.
+ * Тексты статей из ресурсов pages/ru-article.html и pages/en-article.html приводятся к одинаковому
+ * числу слов, поэтому операции в секунду по языкам сравнимы напрямую; в смешанном тексте русские
+ * и английские слова чередуются отрезками по {@value #RUN} слов. Вариант cache=minimal почти
+ * не пользуется кэшем словоформ и сравнивает сами морфологии:
+ * <pre>
+ * mvn -Pbenchmark -DskipTests verify -Djmh.args="LanguageLemmatisationBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LanguageLemmatisationBenchmark {
+    private static final int WORDS = 2_000;
+    private static final int RUN = 10;
+
+    @Param({"ru", "en", "mixed"})
+    public String language;
+
+    @Param({"default", "minimal"})
+    public String cache;
+
+    private String text;
+    private Lemmatisation lemmatisation;
+
+    @Setup
+    public void setUp() throws IOException {
+        String[] russian = words("/pages/ru-article.html");
+        String[] english = words("/pages/en-article.html");
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < WORDS; i++) {
+            String[] words = switch (language) {
+                case "ru" -> russian;
+                case "en" -> english;
+                default -> (i / RUN) % 2 == 0 ? russian : english;
+            };
+            builder.append(words[i % words.length]).append(' ');
+        }
+        text = builder.toString();
+        MorphologySettings settings = new MorphologySettings();
+        if (cache.equals("minimal")) {
+            settings.setWordFormCacheSize(0);
+        }
+        lemmatisation = new Lemmatisation(settings);
+    }
+
+    @Benchmark
+    public Map<String, Integer> getLemmas() {
+        return lemmatisation.getLemmas(text);
+    }
+
+    private static String[] words(String resource) throws IOException {
+        return HtmlTextExtractor.extract(LemmatisationBenchmark.resource(resource), "http://localhost/")
+                .getText().trim().split("\\s+");
+    }
+}
@@ -0,0 +1,121 @@
+package searchengine.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import searchengine.config.MorphologySettings;
+import searchengine.services.parsing.HtmlTextExtractor;
+import searchengine.services.parsing.Lemmatisation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Сравнение прежней лемматизации {@link LegacyLemmatisation} с текущей {@link Lemmatisation}
+ * на тексте страниц, извлечённом {@link HtmlTextExtractor}. Одна операция - лемматизация всех страниц.
+ * <p>
+ * По умолчанию берётся страница из ресурсов pages/ru-article.html; сохранённые при обходе страницы
+ * подключаются параметром pagesDir (все *.html каталога). Вариант currentUncached запускает текущую
+ * реализацию с минимальным кэшем словоформ и показывает выигрыш от разбора текста без кэша.
+ * Выделение памяти на операцию выводит профилировщик -prof gc:
+ * <pre>
+ * mvn -Pbenchmark -DskipTests verify -Djmh.args="LemmatisationBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LemmatisationBenchmark {
+
+    @Param({""})
+    public String pagesDir;
+
+    private List<String> texts;
+    private LegacyLemmatisation legacy;
+    private Lemmatisation current;
+    private Lemmatisation currentUncached;
+
+    @Setup
+    public void setUp() throws IOException {
+        texts = new ArrayList<>();
+        for (String html : pages(pagesDir)) {
+            texts.add(HtmlTextExtractor.extract(html, "http://localhost/").getText());
+        }
+        legacy = new LegacyLemmatisation();
+        current = new Lemmatisation(new MorphologySettings());
+        MorphologySettings uncached = new MorphologySettings();
+        uncached.setWordFormCacheSize(0);
+        currentUncached = new Lemmatisation(uncached);
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        for (String text : texts) {
+            blackhole.consume(legacy.getLemmas(text));
+        }
+    }
+
+    @Benchmark
+    public void current(Blackhole blackhole) {
+        for (String text : texts) {
+            blackhole.consume(current.getLemmas(text));
+        }
+    }
+
+    @Benchmark
+    public void currentUncached(Blackhole blackhole) {
+        for (String text : texts) {
+            blackhole.consume(currentUncached.getLemmas(text));
+        }
+    }
+
+    /**
+     * Несколько потоков обхода лемматизируют страницы одновременно: прежняя реализация
+     * упирается в синхронизированные методы.
+     */
+    @Benchmark
+    @Threads(4)
+    public void legacyConcurrent(Blackhole blackhole) {
+        legacy(blackhole);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void currentConcurrent(Blackhole blackhole) {
+        current(blackhole);
+    }
+
+    static List<String> pages(String directory) throws IOException {
+        if (directory == null || directory.isBlank()) {
+            return List.of(resource("/pages/ru-article.html"));
+        }
+        try (Stream<Path> files = Files.list(Path.of(directory))) {
+            List<String> pages = new ArrayList<>();
+            for (Path file : files.filter(path -> path.toString().endsWith(".html")).sorted().toList()) {
+                pages.add(Files.readString(file, StandardCharsets.UTF_8));
+            }
+            if (pages.isEmpty()) {
+                throw new IOException("В каталоге " + directory + " нет страниц *.html");
+            }
+            return pages;
+        }
+    }
+
+    static String resource(String name) throws IOException {
+        try (InputStream stream = LemmatisationBenchmark.class.getResourceAsStream(name)) {
+            if (stream == null) {
+                throw new IOException("Нет ресурса " + name);
+            }
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package searchengine.services.parsing;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import searchengine.config.CrawlerSettings;
+import searchengine.config.MorphologySettings;
+import searchengine.model.entities.SiteEntity;
+import searchengine.model.repositories.PageRepository;
+import searchengine.model.repositories.PageValidatorsView;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Обход сайта-заглушки {@link StubSite} полным конвейером загрузки и разбора без сети и базы:
+ * записанные страницы перехватывает {@link RecordingPipeline}.
+ */
+class SiteParserCrawlTest {
+    private static Lemmatisation lemmatisation;
+
+    @TempDir
+    Path checkpoints;
+
+    @BeforeAll
+    static void loadMorphology() throws IOException {
+        lemmatisation = new Lemmatisation(new MorphologySettings());
+    }
+
+    @Test
+    void crawlsEveryPageOfStubSite() throws Exception {
+        int pages = 300;
+        try (StubSite site = StubSite.start().generated(pages, 5)) {
+            List<ParsedPage> written = crawl(site);
+
+            assertEquals(pages + 1, written.size());
+            assertEquals(pages + 1, written.stream().map(ParsedPage::getPath).distinct().count());
+            ParsedPage page = written.stream()
+                    .filter(parsed -> parsed.getPath().endsWith("/page-7.html"))
+                    .findFirst().orElseThrow();
+            assertEquals("Страница 7", page.getTitle());
+            assertTrue(page.getLemmas().containsKey("поисковый"));
+            assertNotNull(page.getPositions());
+            assertEquals(1, site.requests().stream().filter("/page-7.html"::equals).count());
+        }
+    }
+
+    @Test
+    void resolvesRelativeLinksAgainstRedirectTarget() throws Exception {
+        try (StubSite site = StubSite.start()) {
+            site.page("/", StubSite.html("Главная", "<a href=\"/moved\">документация</a>"))
+                    .redirect("/moved", "/docs/")
+                    .page("/docs/", StubSite.html("Документация", "<a href=\"intro.html\">введение</a>"))
+                    .page("/docs/intro.html", StubSite.html("Введение", "<p>Введение в поиск</p>"));
+
+            Set<String> paths = crawl(site).stream().map(ParsedPage::getPath).collect(Collectors.toSet());
+
+            assertTrue(paths.contains(site.url("/docs/intro.html")), paths::toString);
+            assertFalse(site.requests().contains("/intro.html"));
+        }
+    }
+
+    @Test
+    void removesKnownPagesOnlyWhenGone() throws Exception {
+        try (StubSite site = StubSite.start()) {
+            site.page("/", StubSite.html("Главная",
+                            "<a href=\"/unavailable\">раз</a><a href=\"/deleted\">два</a>"))
+                    .status("/unavailable", 503)
+                    .status("/deleted", 410);
+            List<PageValidatorsView> stored =
+                    List.of(known(11, site.url("/unavailable")), known(12, site.url("/deleted")));
+            PageRepository pageRepository = mock(PageRepository.class);
+            when(pageRepository.findValidatorsBySiteId(1)).thenReturn(stored);
+
+            List<ParsedPage> written = crawl(site, KnownPages.load(1, pageRepository));
+
+            Set<Integer> removed = written.stream().filter(ParsedPage::isRemoval)
+                    .map(ParsedPage::getReplacedPageId).collect(Collectors.toSet());
+            assertEquals(Set.of(12), removed);
+        }
+    }
+
+    @Test
+    void keepsKnownPagesBelowUnavailableHub() throws Exception {
+        try (StubSite site = StubSite.start()) {
+            site.page("/", StubSite.html("Главная", "<a href=\"/hub\">раздел</a>"))
+                    .status("/hub", 503)
+                    .page("/hub/child", StubSite.html("Статья", "<p>Статья раздела</p>"));
+            List<PageValidatorsView> stored = List.of(known(11, site.url("/hub")),
+                    known(12, site.url("/hub/child")), known(13, site.url("/unlinked")));
+            PageRepository pageRepository = mock(PageRepository.class);
+            when(pageRepository.findValidatorsBySiteId(1)).thenReturn(stored);
+            when(pageRepository.findContentByPageId(11))
+                    .thenReturn(StubSite.html("Раздел", "<a href=\"/hub/child\">статья</a>"));
+
+            List<ParsedPage> written = crawl(site, KnownPages.load(1, pageRepository));
+
+            assertTrue(written.stream().noneMatch(ParsedPage::isRemoval));
+            assertTrue(site.requests().contains("/hub/child"), () -> site.requests().toString());
+        }
+    }
+
+    @Test
+    void keepsKnownPagesWhenRootIsUnavailable() throws Exception {
+        try (StubSite site = StubSite.start()) {
+            site.status("/", 503);
+            List<PageValidatorsView> stored = List.of(known(11, site.url("/")), known(12, site.url("/about")));
+            PageRepository pageRepository = mock(PageRepository.class);
+            when(pageRepository.findValidatorsBySiteId(1)).thenReturn(stored);
+
+            List<ParsedPage> written = crawl(site, KnownPages.load(1, pageRepository));
+
+            assertTrue(written.stream().noneMatch(ParsedPage::isRemoval));
+        }
+    }
+
+    @Test
+    void keepsKnownPagesWhenCrawlLimitIsReached() throws Exception {
+        try (StubSite site = StubSite.start().generated(30, 3)) {
+            List<PageValidatorsView> stored = List.of(known(11, site.url("/page-25.html")));
+            PageRepository pageRepository = mock(PageRepository.class);
+            when(pageRepository.findValidatorsBySiteId(1)).thenReturn(stored);
+            CrawlerSettings settings = settings();
+            settings.setMaxPages(10);
+
+            List<ParsedPage> written = crawl(site, KnownPages.load(1, pageRepository), settings);
+
+            assertEquals(10, written.size());
+            assertTrue(written.stream().noneMatch(ParsedPage::isRemoval));
+        }
+    }
+
+    private static PageValidatorsView known(int pageId, String path) {
+        PageValidatorsView page = mock(PageValidatorsView.class);
+        when(page.getPageId()).thenReturn(pageId);
+        when(page.getPagePath()).thenReturn(path);
+        return page;
+    }
+
+    private List<ParsedPage> crawl(StubSite site) throws IOException {
+        return crawl(site, new KnownPages(null));
+    }
+
+    private List<ParsedPage> crawl(StubSite site, KnownPages knownPages) throws IOException {
+        return crawl(site, knownPages, settings());
+    }
+
+    private static CrawlerSettings settings() {
+        CrawlerSettings settings = new CrawlerSettings();
+        settings.setRequestRate(10_000);
+        settings.setRequestBurst(100);
+        return settings;
+    }
+
+    private List<ParsedPage> crawl(StubSite site, KnownPages knownPages, CrawlerSettings settings) throws IOException {
+        PageFetcher fetcher = new PageFetcher(settings);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(checkpoints.resolve("site.checkpoint"), false, 1_000)) {
+            PolitenessScheduler politeness = new PolitenessScheduler(settings, fetcher);
+            politeness.register(site.url("/"), null);
+            SiteEntity siteEntity = new SiteEntity();
+            siteEntity.setSiteID(1);
+            siteEntity.setUrl(site.url("/"));
+            UrlFrontier frontier = new UrlFrontier(siteEntity.getUrl(), settings);
+            frontier.offer(siteEntity.getUrl(), 0);
+            RecordingPipeline pipeline = new RecordingPipeline(settings);
+            pool.invoke(new SiteParser(frontier, knownPages, checkpoint, siteEntity, pipeline,
+                    politeness, fetcher, lemmatisation, true));
+            return List.copyOf(pipeline.pages);
+        } finally {
+            pool.shutdownNow();
+            fetcher.close();
+        }
+    }
+
+    /**
+     * Конвейер записи, который только запоминает страницы и сразу отмечает их записанными.
+     */
+    private static class RecordingPipeline extends PageWritePipeline {
+        private final Queue<ParsedPage> pages = new ConcurrentLinkedQueue<>();
+
+        RecordingPipeline(CrawlerSettings settings) {
+            super(null, null, null, null, settings);
+        }
+
+        @Override
+        public void submit(ParsedPage page) {
+            pages.add(page);
+            page.getWritten().complete(null);
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
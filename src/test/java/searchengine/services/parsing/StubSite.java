@@ -0,0 +1,122 @@
+package searchengine.services.parsing;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Сайт-заглушка на локальном {@link HttpServer} для проверки обхода без сети.
+ * Отдаёт заданные страницы и перенаправления, на остальные адреса отвечает 404
+ * и запоминает пути всех запросов.
+ */
+class StubSite implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final Queue<String> requests = new ConcurrentLinkedQueue<>();
+
+    private record Route(int code, String location, byte[] body) {
+    }
+
+    private StubSite() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newFixedThreadPool(8);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    static StubSite start() throws IOException {
+        return new StubSite();
+    }
+
+    String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    StubSite page(String path, String html) {
+        routes.put(path, new Route(200, null, html.getBytes(StandardCharsets.UTF_8)));
+        return this;
+    }
+
+    StubSite status(String path, int code) {
+        routes.put(path, new Route(code, null, new byte[0]));
+        return this;
+    }
+
+    StubSite redirect(String path, String location) {
+        routes.put(path, new Route(301, location, new byte[0]));
+        return this;
+    }
+
+    /**
+     * Сайт из pages страниц /page-i.html, связанных как дерево с links потомками у каждой страницы:
+     * главная ведёт на /page-0.html, каждая страница ссылается на своих потомков и на родителя.
+     */
+    StubSite generated(int pages, int links) {
+        page("/", html("Главная", link(0)));
+        for (int i = 0; i < pages; i++) {
+            StringBuilder body = new StringBuilder("<p>Страница номер ").append(i)
+                    .append(" рассказывает о поисковой системе и индексации сайтов.</p>")
+                    .append(link(i / links));
+            for (int child = i * links + 1; child <= i * links + links && child < pages; child++) {
+                body.append(link(child));
+            }
+            page("/page-" + i + ".html", html("Страница " + i, body.toString()));
+        }
+        return this;
+    }
+
+    static String html(String title, String body) {
+        return "<html><head><title>" + title + "</title></head><body>" + body + "</body></html>";
+    }
+
+    List<String> requests() {
+        return new ArrayList<>(requests);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static String link(int page) {
+        return "<a href=\"/page-" + page + ".html\">страница " + page + "</a>";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        requests.add(path);
+        Route route = routes.get(path);
+        try (exchange; OutputStream body = exchange.getResponseBody()) {
+            if (route == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (route.body().length == 0) {
+                if (route.location() != null) {
+                    exchange.getResponseHeaders().set("Location", route.location());
+                }
+                exchange.sendResponseHeaders(route.code(), -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(route.code(), route.body().length);
+            body.write(route.body());
+        }
+    }
+}
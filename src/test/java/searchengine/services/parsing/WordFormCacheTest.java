@@ -0,0 +1,112 @@
+package searchengine.services.parsing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Попадания, ограничение размера и вытеснение {@link WordFormCache} на потоках словоформ
+ * с распределением частот по закону Ципфа, как у слов текста.
+ */
+class WordFormCacheTest {
+    private static final Function<String, String> UPPER_CASE = String::toUpperCase;
+
+    @Test
+    void cachesNormalFormsAndMissingWords() {
+        WordFormCache cache = new WordFormCache(100);
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, String> loader = word -> {
+            loads.incrementAndGet();
+            return word.startsWith("и") ? null : word.toUpperCase();
+        };
+
+        assertEquals("ДОМ", cache.get("дом", loader));
+        assertEquals("ДОМ", cache.get("дом", loader));
+        assertNull(cache.get("и", loader));
+        assertNull(cache.get("и", loader));
+
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate());
+    }
+
+    @Test
+    void keepsHitRateHighOnZipfStream() {
+        int capacity = 2_000;
+        WordFormCache cache = new WordFormCache(capacity);
+        int[] stream = zipf(20_000, 300_000, 42);
+        for (int word : stream) {
+            assertEquals("W" + word, cache.get("w" + word, UPPER_CASE));
+        }
+
+        assertTrue(cache.getHitRate() > 0.7, () -> "доля попаданий " + cache.getHitRate());
+        assertTrue(cache.size() <= capacity, () -> "размер " + cache.size());
+        assertTrue(cache.getEvictions() > 0);
+        assertEquals(stream.length, cache.getHits() + cache.getMisses());
+    }
+
+    @Test
+    void staysWithinCapacityOnDistinctWords() {
+        for (int capacity : new int[]{16, 1_000, 10_000}) {
+            WordFormCache cache = new WordFormCache(capacity);
+            for (int i = 0; i < capacity * 10; i++) {
+                cache.get("слово" + i, UPPER_CASE);
+            }
+            assertTrue(cache.size() <= capacity, "ёмкость " + capacity + ", размер " + cache.size());
+            assertTrue(cache.size() >= capacity / 2, "ёмкость " + capacity + ", размер " + cache.size());
+            assertEquals(0, cache.getHits());
+            assertTrue(cache.getEvictions() >= capacity * 9L - capacity / 100);
+        }
+    }
+
+    /**
+     * Однократный проход по словоформам, в пять раз превышающим ёмкость, короче периода старения
+     * счётчиков частот и не вытесняет часто встречавшиеся словоформы.
+     */
+    @Test
+    void frequentWordsSurviveScanOfRareWords() {
+        WordFormCache cache = new WordFormCache(1_000);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 200; i++) {
+                cache.get("частое" + i, UPPER_CASE);
+            }
+        }
+        for (int i = 0; i < 5_000; i++) {
+            cache.get("редкое" + i, UPPER_CASE);
+        }
+
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 200; i++) {
+            cache.get("частое" + i, word -> {
+                loads.incrementAndGet();
+                return word.toUpperCase();
+            });
+        }
+        assertTrue(loads.get() <= 10, () -> "заново загружено частых словоформ: " + loads.get());
+    }
+
+    /**
+     * Номера слов словаря из vocabulary слов с вероятностью, обратно пропорциональной рангу.
+     */
+    private static int[] zipf(int vocabulary, int length, long seed) {
+        double[] cumulative = new double[vocabulary];
+        double sum = 0;
+        for (int rank = 0; rank < vocabulary; rank++) {
+            sum += 1.0 / (rank + 1);
+            cumulative[rank] = sum;
+        }
+        Random random = new Random(seed);
+        int[] stream = new int[length];
+        for (int i = 0; i < length; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            stream[i] = index < 0 ? -index - 1 : index;
+        }
+        return stream;
+    }
+}
@@ -0,0 +1,161 @@
+package searchengine.services.searching;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import searchengine.config.IndexSettings;
+import searchengine.config.MorphologySettings;
+import searchengine.config.SearchSettings;
+import searchengine.config.Site;
+import searchengine.config.SitesList;
+import searchengine.dto.searching.SearchData;
+import searchengine.dto.searching.SearchResponse;
+import searchengine.model.entities.PageEntity;
+import searchengine.model.entities.SiteEntity;
+import searchengine.model.repositories.PageRepository;
+import searchengine.model.repositories.SearchIndexRepository;
+import searchengine.model.repositories.SiteRepository;
+import searchengine.services.index.Bm25Scorer;
+import searchengine.services.index.InvertedIndex;
+import searchengine.services.index.LemmaStatistics;
+import searchengine.services.parsing.Lemmatisation;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Поиск по смешанному русско-английскому запросу через {@link SearchingServiceImpl} с настоящими
+ * лемматизацией, инвертированным индексом в каталоге @TempDir, статистикой лемм, параллельным поиском
+ * и сниппетами; репозитории заменены заглушками.
+ */
+class SearchingServiceImplTest {
+    private static final String SITE_URL = "http://example.ru";
+    private static final Map<Integer, String> TEXTS = Map.of(
+            1, "Поисковый движок на Spring Boot: индексация сайтов и поиск по леммам.",
+            2, "Spring Boot упрощает настройку веб-приложений на Java.",
+            3, "Поисковый движок обходит страницы и строит индекс.",
+            4, "Настройка поискового движка на Spring Boot с морфологией для русских и английских слов.");
+
+    private static Lemmatisation lemmatisation;
+
+    @TempDir
+    Path indexDirectory;
+
+    private InvertedIndex invertedIndex;
+    private ParallelSiteSearch parallelSiteSearch;
+    private SnippetGenerator snippetGenerator;
+    private SearchingServiceImpl searchingService;
+
+    @BeforeAll
+    static void loadMorphology() throws IOException {
+        lemmatisation = new Lemmatisation(new MorphologySettings());
+    }
+
+    @BeforeEach
+    void indexPages() {
+        SearchSettings searchSettings = new SearchSettings();
+        IndexSettings indexSettings = new IndexSettings();
+        indexSettings.setPath(indexDirectory.toString());
+
+        SiteEntity site = new SiteEntity();
+        site.setSiteID(1);
+        site.setUrl(SITE_URL);
+        site.setName("Пример");
+        Map<Integer, PageEntity> pages = new HashMap<>();
+        TEXTS.forEach((pageId, text) -> pages.put(pageId, page(site, pageId, text)));
+
+        SiteRepository siteRepository = mock(SiteRepository.class);
+        when(siteRepository.findSiteEntityByUrlIsIgnoreCase(SITE_URL)).thenReturn(site);
+        PageRepository pageRepository = mock(PageRepository.class);
+        when(pageRepository.streamPagesAfter(anyInt())).thenAnswer(invocation -> Stream.empty());
+        when(pageRepository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            List<PageEntity> found = new ArrayList<>();
+            invocation.<Iterable<Integer>>getArgument(0).forEach(pageId -> found.add(pages.get(pageId)));
+            return found;
+        });
+        SearchIndexRepository searchIndexRepository = mock(SearchIndexRepository.class);
+        when(searchIndexRepository.streamPostingsAfter(anyInt())).thenAnswer(invocation -> Stream.empty());
+
+        invertedIndex = new InvertedIndex(searchIndexRepository, pageRepository, siteRepository, indexSettings);
+        invertedIndex.load();
+        LemmaStatistics lemmaStatistics = new LemmaStatistics(null, searchSettings);
+        for (PageEntity page : pages.values()) {
+            Map<String, Integer> lemmas = lemmatisation.getLemmas(page.getText());
+            invertedIndex.addPage(1, page.getPageID(), page.getPagePath(), page.getTitle(), lemmas);
+            lemmaStatistics.addPage(1, lemmas);
+        }
+        invertedIndex.commit(1);
+        lemmaStatistics.refreshStopLemmas(1);
+
+        Site configured = new Site();
+        configured.setUrl(SITE_URL);
+        configured.setName(site.getName());
+        SitesList sitesList = new SitesList();
+        sitesList.setSites(List.of(configured));
+
+        parallelSiteSearch = new ParallelSiteSearch(invertedIndex, lemmaStatistics, searchSettings);
+        snippetGenerator = new SnippetGenerator(lemmatisation, searchSettings);
+        searchingService = new SearchingServiceImpl(siteRepository, pageRepository, invertedIndex, lemmaStatistics,
+                lemmatisation, snippetGenerator, sitesList, searchSettings,
+                new SearchResultCache(searchSettings, invertedIndex),
+                Map.of("bm25", new Bm25Scorer(searchSettings)), parallelSiteSearch,
+                new PagePositions(searchIndexRepository, pageRepository, lemmatisation));
+    }
+
+    @AfterEach
+    void close() throws InterruptedException {
+        snippetGenerator.close();
+        parallelSiteSearch.close();
+        invertedIndex.close();
+    }
+
+    @Test
+    void findsPagesWithRussianAndEnglishWordsOfMixedQuery() {
+        SearchResponse response = searchingService.getSearchResults("Поисковые движки на Spring Boot", null, 0, 10, null);
+
+        assertTrue(response.isResult());
+        assertEquals(2, response.getCount());
+        assertEquals(Set.of("/page-1", "/page-4"), uris(response));
+        for (SearchData data : response.getData()) {
+            assertTrue(data.getSnippet().contains("<b>Spring</b>"), data::getSnippet);
+            assertTrue(data.getSnippet().matches("(?s).*<b>[Пп]оисков\\S*</b>.*"), data::getSnippet);
+            assertEquals(SITE_URL, data.getSite());
+            assertTrue(data.getRelevance() > 0);
+        }
+    }
+
+    @Test
+    void englishAndRussianWordsAreSearchedSeparately() {
+        assertEquals(Set.of("/page-1", "/page-2", "/page-4"),
+                uris(searchingService.getSearchResults("spring BOOT", SITE_URL, 0, 10, null)));
+        assertEquals(Set.of("/page-1", "/page-3", "/page-4"),
+                uris(searchingService.getSearchResults("поисковый движок", SITE_URL, 0, 10, null)));
+    }
+
+    private static Set<String> uris(SearchResponse response) {
+        return response.getData().stream().map(SearchData::getUri).collect(Collectors.toSet());
+    }
+
+    private static PageEntity page(SiteEntity site, int pageId, String text) {
+        PageEntity page = new PageEntity();
+        page.setPageID(pageId);
+        page.setSiteID(site);
+        page.setPagePath(SITE_URL + "/page-" + pageId);
+        page.setPageCode(200);
+        page.setTitle("Страница " + pageId);
+        page.setText(text);
+        page.setPageContent("<html><body><p>" + text + "</p></body></html>");
+        return page;
+    }
+}